@@ -1,35 +1,43 @@
 package org.IhorLitvinov.eolymp.problems.dancing_party;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Scanner;
+import java.util.Arrays;
 import java.util.function.IntPredicate;
 
 public class Main {
-    private Scanner scanner;
+    private static final String PARAMETRIC_MODE = "--parametric";
+    private static final String SCHEDULE_MODE = "--schedule";
+    private String mode = "";
+    private PreferencesReader reader;
     private PrintWriter printWriter;
     private Party party;
+    private MaxFlowFinder flowFinder;
     private int maxRounds;
     private int pairsNumber;
 
-    public Main(Scanner scanner, PrintWriter printWriter) {
-        this.scanner = scanner;
+    public Main(PreferencesReader reader, PrintWriter printWriter) {
+        this.reader = reader;
         this.printWriter = printWriter;
     }
 
-    private void scanData() {
-        pairsNumber = scanner.nextInt();
+    public void useMode(String mode) {
+        this.mode = mode;
+    }
+
+    private void scanData() throws IOException {
+        pairsNumber = reader.nextInt();
         maxRounds = pairsNumber * pairsNumber;
-        int unfavoredPairsNumber = scanner.nextInt();
-        char[][] preferences = new char[pairsNumber][pairsNumber];
+        int unfavoredPairsNumber = reader.nextInt();
+        long[][] preferences = new long[pairsNumber][];
         for (int boyIndex = 0; boyIndex < pairsNumber; boyIndex++) {
-            String likesString = scanner.next();
-            preferences[boyIndex] = likesString.toCharArray();
+            preferences[boyIndex] = reader.nextLikes(pairsNumber);
         }
         party = new Party(preferences, unfavoredPairsNumber);
+        flowFinder = new MaxFlowFinder(party.getNodesNumber());
     }
 
     private int binarySearch(
@@ -48,11 +56,47 @@ public class Main {
         return currentMin - 1;
     }
 
+    private int maxFeasibleRounds() {
+        party.update(0);
+        party.saveFlow();
+        int feasibleRounds = 0;
+        int feasibleFlow = 0;
+        int infeasibleRounds = Math.min(maxRounds, pairsNumber + 1);
+        while (feasibleRounds + 1 < infeasibleRounds) {
+            int roundsNumber = (feasibleRounds + infeasibleRounds) / 2;
+            party.raiseRounds(roundsNumber);
+            int flow = feasibleFlow + flowFinder.maxFlow(party);
+            if (flow == pairsNumber * roundsNumber) {
+                feasibleRounds = roundsNumber;
+                feasibleFlow = flow;
+                party.saveFlow();
+            } else {
+                infeasibleRounds = roundsNumber;
+                party.restoreFlow();
+            }
+        }
+        return feasibleRounds;
+    }
+
     private void solveProblem() {
+        if (mode.equals(PARAMETRIC_MODE)) {
+            printWriter.println(maxFeasibleRounds());
+            return;
+        }
+        if (mode.equals(SCHEDULE_MODE)) {
+            int roundsNumber = maxFeasibleRounds();
+            party.restoreFlow();
+            printWriter.println(roundsNumber);
+            RoundsScheduler scheduler =
+                    new RoundsScheduler(pairsNumber, printWriter);
+            scheduler.schedule(party.dancePartners(roundsNumber),
+                    roundsNumber);
+            return;
+        }
         IntPredicate isNotEnoughPairs = possibleRoundsNumber -> {
             party.update(possibleRoundsNumber);
             int averageNumberOfRounds =
-                    MaxFlowFinder.maxFlow(party) / pairsNumber;
+                    flowFinder.maxFlow(party) / pairsNumber;
             return averageNumberOfRounds < possibleRoundsNumber;
         };
         printWriter.println(
@@ -60,138 +104,255 @@ public class Main {
     }
 
     public static void main(String[] args) throws IOException {
-        Scanner scanner = new Scanner(new File("input.txt"));
+        PreferencesReader reader = new PreferencesReader(
+                new FileInputStream("input.txt"));
         PrintWriter printWriter = new PrintWriter(new File("output.txt"));
-        Main main = new Main(scanner, printWriter);
+        Main main = new Main(reader, printWriter);
+        if (args.length > 0) {
+            main.useMode(args[0]);
+        }
         main.scanData();
         main.solveProblem();
         printWriter.close();
     }
 }
 
+class PreferencesReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int END_OF_INPUT = -1;
+    private static final byte LIKE_SYMBOL = 'Y';
+    private InputStream inputStream;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength;
+    private int bufferPosition;
+
+    public PreferencesReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    private int readByte() throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferLength = inputStream.read(buffer, 0, BUFFER_SIZE);
+            bufferPosition = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return END_OF_INPUT;
+            }
+        }
+        return buffer[bufferPosition++];
+    }
+
+    private int skipWhitespace() throws IOException {
+        int symbol = readByte();
+        while (symbol != END_OF_INPUT && symbol <= ' ') {
+            symbol = readByte();
+        }
+        if (symbol == END_OF_INPUT) {
+            throw new IOException("Unexpected end of input.");
+        }
+        return symbol;
+    }
+
+    public int nextInt() throws IOException {
+        int symbol = skipWhitespace();
+        boolean negative = symbol == '-';
+        if (negative) {
+            symbol = readByte();
+        }
+        int value = 0;
+        while (symbol >= '0' && symbol <= '9') {
+            value = value * 10 + symbol - '0';
+            symbol = readByte();
+        }
+        return negative ? -value : value;
+    }
+
+    public long[] nextLikes(int length) throws IOException {
+        long[] likes = new long[(length + Long.SIZE - 1) / Long.SIZE];
+        int symbol = skipWhitespace();
+        for (int index = 0; index < length; index++) {
+            if (index > 0) {
+                symbol = readByte();
+            }
+            if (symbol == LIKE_SYMBOL) {
+                likes[index / Long.SIZE] |= 1L << index;
+            }
+        }
+        return likes;
+    }
+}
+
 interface Followable {
     int getSourceNode();
 
     int getDestinationNode();
 }
 
-interface MatrixGraph {
-    int[][] adjacencyMatrix();
+interface ForwardStarGraph {
+    int[] firstEdges();
 
-    int getNodesNumber();
-}
+    int[] nextEdges();
 
-interface Marked {
-    void mark(int nodeIndex, int mark);
+    int[] edgeTargets();
 
-    int getMark(int nodeIndex);
+    int[] capacities();
 
-    void cleanMarks();
+    int getNodesNumber();
 }
 
 class MaxFlowFinder {
-    public static <T extends MatrixGraph
-            & Marked & Followable> int maxFlow(T graph) {
-        int maxFlow = 0;
-        graph.cleanMarks();
-        while (hasWay(graph)) {
-            int minCapacity = minCapacity(graph);
-            maxFlow += minCapacity;
-            reduceCapacity(graph, minCapacity);
-            graph.cleanMarks();
-        }
-        return maxFlow;
+    private static final int NO_EDGE = -1;
+    private static final int UNREACHED = -1;
+    private int[] levels;
+    private int[] currentEdges;
+    private int[] queue;
+    private int[] pathEdges;
+
+    public MaxFlowFinder(int nodesNumber) {
+        levels = new int[nodesNumber];
+        currentEdges = new int[nodesNumber];
+        queue = new int[nodesNumber];
+        pathEdges = new int[nodesNumber];
     }
 
-    private static <T extends MatrixGraph
-            & Marked & Followable> int minCapacity(T graph) {
-        int[][] adjacencyMatrix = graph.adjacencyMatrix();
-        int currentNode = graph.getDestinationNode();
-        int parent = graph.getMark(currentNode) - 1;
-        int minCapacity = adjacencyMatrix[parent][currentNode];
-        currentNode = parent;
-        parent = graph.getMark(currentNode) - 1;
-        while (parent >= 0) {
-            int currentCapacity = adjacencyMatrix[parent][currentNode];
-            if (currentCapacity < minCapacity) {
-                minCapacity = currentCapacity;
+    public <T extends ForwardStarGraph & Followable> int maxFlow(T graph) {
+        int maxFlow = 0;
+        while (buildLevels(graph)) {
+            System.arraycopy(graph.firstEdges(), 0, currentEdges, 0,
+                    graph.getNodesNumber());
+            int blockingFlow = augment(graph);
+            while (blockingFlow > 0) {
+                maxFlow += blockingFlow;
+                blockingFlow = augment(graph);
             }
-            currentNode = parent;
-            parent = graph.getMark(currentNode) - 1;
         }
-        return minCapacity;
+        return maxFlow;
     }
 
-    private static <T extends MatrixGraph & Marked
-            & Followable> void reduceCapacity(T graph, int minCapacity) {
-        int[][] adjacencyMatrix = graph.adjacencyMatrix();
-        int currentNode = graph.getDestinationNode();
-        int parent = graph.getMark(currentNode) - 1;
-        while (parent >= 0) {
-            adjacencyMatrix[parent][currentNode] -= minCapacity;
-            adjacencyMatrix[currentNode][parent] += minCapacity;
-            currentNode = parent;
-            parent = graph.getMark(currentNode) - 1;
+    private <T extends ForwardStarGraph
+            & Followable> boolean buildLevels(T graph) {
+        int[] nextEdges = graph.nextEdges();
+        int[] edgeTargets = graph.edgeTargets();
+        int[] capacities = graph.capacities();
+        Arrays.fill(levels, 0, graph.getNodesNumber(), UNREACHED);
+        int source = graph.getSourceNode();
+        levels[source] = 0;
+        queue[0] = source;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int edge = graph.firstEdges()[node]; edge != NO_EDGE;
+                 edge = nextEdges[edge]) {
+                int target = edgeTargets[edge];
+                if (capacities[edge] > 0 && levels[target] == UNREACHED) {
+                    levels[target] = levels[node] + 1;
+                    queue[tail++] = target;
+                }
+            }
         }
+        return levels[graph.getDestinationNode()] != UNREACHED;
     }
 
-    private static <T extends MatrixGraph
-            & Marked & Followable> boolean hasWay(T graph) {
+    private <T extends ForwardStarGraph & Followable> int augment(T graph) {
+        int[] nextEdges = graph.nextEdges();
+        int[] edgeTargets = graph.edgeTargets();
+        int[] capacities = graph.capacities();
         int source = graph.getSourceNode();
-        graph.mark(source, -1);
-        Queue<Integer> queue = new LinkedList<>();
-        queue.add(source);
-        while (!queue.isEmpty()) {
-            int currentNode = queue.poll();
-            int[] capacities = graph.adjacencyMatrix()[currentNode];
-            for (int neighborIndex = 0; neighborIndex < capacities.length;
-                 neighborIndex++) {
-                if (capacities[neighborIndex] > 0
-                        && graph.getMark(neighborIndex) == 0) {
-                    graph.mark(neighborIndex, currentNode + 1);
-                    if (neighborIndex == graph.getDestinationNode()) {
-                        return true;
-                    }
-                    queue.add(neighborIndex);
+        int destination = graph.getDestinationNode();
+        int node = source;
+        int pathLength = 0;
+        while (node != destination) {
+            int edge = currentEdges[node];
+            while (edge != NO_EDGE && (capacities[edge] == 0
+                    || levels[edgeTargets[edge]] != levels[node] + 1)) {
+                edge = nextEdges[edge];
+            }
+            currentEdges[node] = edge;
+            if (edge != NO_EDGE) {
+                pathEdges[pathLength++] = edge;
+                node = edgeTargets[edge];
+            } else {
+                levels[node] = UNREACHED;
+                if (pathLength == 0) {
+                    return 0;
                 }
+                node = edgeTargets[pathEdges[--pathLength] ^ 1];
+                currentEdges[node] = nextEdges[currentEdges[node]];
             }
         }
-        return false;
+        int minCapacity = Integer.MAX_VALUE;
+        for (int pathIndex = 0; pathIndex < pathLength; pathIndex++) {
+            minCapacity = Math.min(minCapacity,
+                    capacities[pathEdges[pathIndex]]);
+        }
+        for (int pathIndex = 0; pathIndex < pathLength; pathIndex++) {
+            capacities[pathEdges[pathIndex]] -= minCapacity;
+            capacities[pathEdges[pathIndex] ^ 1] += minCapacity;
+        }
+        return minCapacity;
     }
 }
 
-class Party implements MatrixGraph, Marked, Followable {
+class Party implements ForwardStarGraph, Followable {
     private static final int NUMBER_OF_LAYERS = 4;
     private static final int BOYS_UNLIKE_LAYER = 1;
     private static final int GIRLS_UNLIKE_LAYER = 2;
     private static final int GIRLS_LAYER = 3;
-    private int[][] adjacencyMatrix;
+    private static final int NO_EDGE = -1;
     private int unfavoredPairsNumber;
+    private int roundsNumber;
     private int nodesNumber;
     private int pairsNumber;
-    private int[] marks;
-    private char[][] preferences;
-
-    public Party(char[][] preferences, int unfavoredPairsNumber) {
-        this.preferences = preferences;
+    private int[] firstEdges;
+    private int[] nextEdges;
+    private int[] edgeTargets;
+    private int[] capacities;
+    private int[] initialCapacities;
+    private int[] savedCapacities;
+    private int savedRoundsNumber;
+    private int edgesNumber;
+    private int pairEdgesEnd;
+    private int firstRoundsEdge;
+
+    public Party(long[][] preferences, int unfavoredPairsNumber) {
         this.unfavoredPairsNumber = unfavoredPairsNumber;
         pairsNumber = preferences.length;
         nodesNumber = pairsNumber * NUMBER_OF_LAYERS + 2;
-        marks = new int[nodesNumber];
+        int maxEdgesNumber = 2 * (pairsNumber * pairsNumber + 4 * pairsNumber);
+        firstEdges = new int[nodesNumber];
+        Arrays.fill(firstEdges, NO_EDGE);
+        nextEdges = new int[maxEdgesNumber];
+        edgeTargets = new int[maxEdgesNumber];
+        capacities = new int[maxEdgesNumber];
+        buildNetwork(preferences);
+        initialCapacities = Arrays.copyOf(capacities, edgesNumber);
+        savedCapacities = new int[edgesNumber];
     }
 
-    public void update(int roundsNumber) {
-        adjacencyMatrix = new int[nodesNumber][nodesNumber];
+    private void buildNetwork(long[][] preferences) {
         for (int boyIndex = 0; boyIndex < pairsNumber; boyIndex++) {
-            for (int girlIndex = 0; girlIndex < pairsNumber; girlIndex++) {
-                if (preferences[boyIndex][girlIndex] == 'Y') {
+            long[] likes = preferences[boyIndex];
+            for (int word = 0; word < likes.length; word++) {
+                int firstGirl = word * Long.SIZE;
+                long girlsMask = firstGirl + Long.SIZE <= pairsNumber
+                        ? -1L : (1L << (pairsNumber - firstGirl)) - 1;
+                for (long liked = likes[word]; liked != 0;
+                     liked &= liked - 1) {
+                    int girlIndex =
+                            firstGirl + Long.numberOfTrailingZeros(liked);
                     uniteNodes(boyIndex, girlsNode(girlIndex), 1);
-                } else {
+                }
+                for (long unliked = ~likes[word] & girlsMask; unliked != 0;
+                     unliked &= unliked - 1) {
+                    int girlIndex =
+                            firstGirl + Long.numberOfTrailingZeros(unliked);
                     uniteNodes(boyUnlikeNode(boyIndex),
                             girlsUnlikeNode(girlIndex), 1);
                 }
             }
         }
+        pairEdgesEnd = edgesNumber;
         for (int boyIndex = 0; boyIndex < pairsNumber; boyIndex++) {
             uniteNodes(boyIndex,
                     boyUnlikeNode(boyIndex), unfavoredPairsNumber);
@@ -200,15 +361,53 @@ class Party implements MatrixGraph, Marked, Followable {
             uniteNodes(girlsUnlikeNode(girlIndex),
                     girlsNode(girlIndex), unfavoredPairsNumber);
         }
+        firstRoundsEdge = edgesNumber;
         int sourceNode = getSourceNode();
         for (int boyNode = 0; boyNode < pairsNumber; boyNode++) {
-            uniteNodes(sourceNode, boyNode, roundsNumber);
+            uniteNodes(sourceNode, boyNode, 0);
         }
         int destinationNode = getDestinationNode();
         for (int girlIndex = 0; girlIndex < pairsNumber; girlIndex++) {
-            uniteNodes(girlsNode(girlIndex),
-                    destinationNode, roundsNumber);
+            uniteNodes(girlsNode(girlIndex), destinationNode, 0);
+        }
+    }
+
+    public void update(int roundsNumber) {
+        System.arraycopy(initialCapacities, 0, capacities, 0, edgesNumber);
+        this.roundsNumber = 0;
+        raiseRounds(roundsNumber);
+    }
+
+    public void raiseRounds(int roundsNumber) {
+        int extraRounds = roundsNumber - this.roundsNumber;
+        this.roundsNumber = roundsNumber;
+        for (int edge = firstRoundsEdge; edge < edgesNumber; edge += 2) {
+            capacities[edge] += extraRounds;
+        }
+    }
+
+    public void saveFlow() {
+        System.arraycopy(capacities, 0, savedCapacities, 0, edgesNumber);
+        savedRoundsNumber = roundsNumber;
+    }
+
+    public void restoreFlow() {
+        System.arraycopy(savedCapacities, 0, capacities, 0, edgesNumber);
+        roundsNumber = savedRoundsNumber;
+    }
+
+    public int[] dancePartners(int roundsNumber) {
+        int[] partners = new int[pairsNumber * roundsNumber];
+        int[] partnersNumbers = new int[pairsNumber];
+        for (int edge = 0; edge < pairEdgesEnd; edge += 2) {
+            if (capacities[edge ^ 1] > 0) {
+                int boyIndex = edgeTargets[edge ^ 1] % pairsNumber;
+                int girlIndex = edgeTargets[edge] % pairsNumber;
+                partners[boyIndex * roundsNumber
+                        + partnersNumbers[boyIndex]++] = girlIndex;
+            }
         }
+        return partners;
     }
 
     private int boyUnlikeNode(int boyIndex) {
@@ -224,32 +423,41 @@ class Party implements MatrixGraph, Marked, Followable {
     }
 
     private void uniteNodes(int nodeFrom, int nodeTo, int capacity) {
-        adjacencyMatrix[nodeFrom][nodeTo] = capacity;
+        addEdge(nodeFrom, nodeTo, capacity);
+        addEdge(nodeTo, nodeFrom, 0);
+    }
+
+    private void addEdge(int nodeFrom, int nodeTo, int capacity) {
+        edgeTargets[edgesNumber] = nodeTo;
+        capacities[edgesNumber] = capacity;
+        nextEdges[edgesNumber] = firstEdges[nodeFrom];
+        firstEdges[nodeFrom] = edgesNumber;
+        edgesNumber++;
     }
 
     @Override
-    public int[][] adjacencyMatrix() {
-        return adjacencyMatrix;
+    public int[] firstEdges() {
+        return firstEdges;
     }
 
     @Override
-    public int getNodesNumber() {
-        return nodesNumber;
+    public int[] nextEdges() {
+        return nextEdges;
     }
 
     @Override
-    public void mark(int nodeIndex, int mark) {
-        marks[nodeIndex] = mark;
+    public int[] edgeTargets() {
+        return edgeTargets;
     }
 
     @Override
-    public int getMark(int nodeIndex) {
-        return marks[nodeIndex];
+    public int[] capacities() {
+        return capacities;
     }
 
     @Override
-    public void cleanMarks() {
-        marks = new int[nodesNumber];
+    public int getNodesNumber() {
+        return nodesNumber;
     }
 
     @Override
@@ -261,4 +469,227 @@ class Party implements MatrixGraph, Marked, Followable {
     public int getDestinationNode() {
         return NUMBER_OF_LAYERS * pairsNumber + 1;
     }
-}
\ No newline at end of file
+}
+
+class RoundsScheduler {
+    private static final int UNMATCHED = -1;
+    private static final int UNREACHED = -1;
+    private int pairsNumber;
+    private PrintWriter printWriter;
+    private int[] roundPartners;
+
+    public RoundsScheduler(int pairsNumber, PrintWriter printWriter) {
+        this.pairsNumber = pairsNumber;
+        this.printWriter = printWriter;
+        roundPartners = new int[pairsNumber];
+    }
+
+    public void schedule(int[] partners, int roundsNumber) {
+        int[] boys = new int[partners.length];
+        for (int edge = 0; edge < boys.length; edge++) {
+            boys[edge] = edge / roundsNumber;
+        }
+        schedule(boys, partners, roundsNumber);
+    }
+
+    private void schedule(int[] boys, int[] girls, int degree) {
+        if (degree == 0) {
+            return;
+        }
+        if (degree == 1) {
+            printRound(boys, girls);
+            return;
+        }
+        if (degree % 2 == 1) {
+            boolean[] matching = findPerfectMatching(boys, girls, degree);
+            printRound(selectEdges(boys, matching, true, pairsNumber),
+                    selectEdges(girls, matching, true, pairsNumber));
+            int restSize = boys.length - pairsNumber;
+            schedule(selectEdges(boys, matching, false, restSize),
+                    selectEdges(girls, matching, false, restSize),
+                    degree - 1);
+            return;
+        }
+        boolean[] firstHalf = splitEulerian(boys, girls, degree);
+        int halfSize = boys.length / 2;
+        schedule(selectEdges(boys, firstHalf, true, halfSize),
+                selectEdges(girls, firstHalf, true, halfSize), degree / 2);
+        schedule(selectEdges(boys, firstHalf, false, halfSize),
+                selectEdges(girls, firstHalf, false, halfSize), degree / 2);
+    }
+
+    private void printRound(int[] boys, int[] girls) {
+        for (int edge = 0; edge < boys.length; edge++) {
+            roundPartners[boys[edge]] = girls[edge];
+        }
+        StringBuilder round = new StringBuilder();
+        for (int boyIndex = 0; boyIndex < pairsNumber; boyIndex++) {
+            if (boyIndex > 0) {
+                round.append(' ');
+            }
+            round.append(roundPartners[boyIndex] + 1);
+        }
+        printWriter.println(round);
+    }
+
+    private static int[] selectEdges(int[] ends, boolean[] selected,
+                                     boolean value, int size) {
+        int[] selectedEnds = new int[size];
+        int selectedNumber = 0;
+        for (int edge = 0; edge < ends.length; edge++) {
+            if (selected[edge] == value) {
+                selectedEnds[selectedNumber++] = ends[edge];
+            }
+        }
+        return selectedEnds;
+    }
+
+    private int[] incidentEdges(int[] boys, int[] girls, int degree) {
+        int[] incidentEdges = new int[2 * boys.length];
+        int[] incidentNumbers = new int[2 * pairsNumber];
+        for (int edge = 0; edge < boys.length; edge++) {
+            int boyNode = boys[edge];
+            int girlNode = pairsNumber + girls[edge];
+            incidentEdges[boyNode * degree + incidentNumbers[boyNode]++] =
+                    edge;
+            incidentEdges[girlNode * degree + incidentNumbers[girlNode]++] =
+                    edge;
+        }
+        return incidentEdges;
+    }
+
+    private boolean[] splitEulerian(int[] boys, int[] girls, int degree) {
+        int[] incidentEdges = incidentEdges(boys, girls, degree);
+        int[] nextIncident = new int[2 * pairsNumber];
+        boolean[] usedEdges = new boolean[boys.length];
+        boolean[] firstHalf = new boolean[boys.length];
+        for (int startNode = 0; startNode < 2 * pairsNumber; startNode++) {
+            int node = startNode;
+            boolean toFirstHalf = true;
+            while (true) {
+                int incidentIndex = node * degree + nextIncident[node];
+                while (nextIncident[node] < degree
+                        && usedEdges[incidentEdges[incidentIndex]]) {
+                    nextIncident[node]++;
+                    incidentIndex++;
+                }
+                if (nextIncident[node] == degree) {
+                    break;
+                }
+                int edge = incidentEdges[incidentIndex];
+                usedEdges[edge] = true;
+                firstHalf[edge] = toFirstHalf;
+                toFirstHalf = !toFirstHalf;
+                node = node < pairsNumber
+                        ? pairsNumber + girls[edge] : boys[edge];
+            }
+        }
+        return firstHalf;
+    }
+
+    private boolean[] findPerfectMatching(int[] boys, int[] girls,
+                                          int degree) {
+        int[] incidentEdges = incidentEdges(boys, girls, degree);
+        int[] edgeOfBoy = new int[pairsNumber];
+        int[] boyOfGirl = new int[pairsNumber];
+        Arrays.fill(edgeOfBoy, UNMATCHED);
+        Arrays.fill(boyOfGirl, UNMATCHED);
+        int[] layers = new int[pairsNumber];
+        int[] queue = new int[pairsNumber];
+        int[] currentIncidents = new int[pairsNumber];
+        int[] path = new int[pairsNumber];
+        int freeLayer = buildLayers(incidentEdges, girls, degree, edgeOfBoy,
+                boyOfGirl, layers, queue);
+        while (freeLayer != UNREACHED) {
+            Arrays.fill(currentIncidents, 0);
+            for (int boyIndex = 0; boyIndex < pairsNumber; boyIndex++) {
+                if (edgeOfBoy[boyIndex] == UNMATCHED) {
+                    augment(boyIndex, incidentEdges, girls, degree,
+                            edgeOfBoy, boyOfGirl, layers, freeLayer,
+                            currentIncidents, path);
+                }
+            }
+            freeLayer = buildLayers(incidentEdges, girls, degree, edgeOfBoy,
+                    boyOfGirl, layers, queue);
+        }
+        boolean[] matching = new boolean[boys.length];
+        for (int edge : edgeOfBoy) {
+            matching[edge] = true;
+        }
+        return matching;
+    }
+
+    private int buildLayers(int[] incidentEdges, int[] girls, int degree,
+                            int[] edgeOfBoy, int[] boyOfGirl,
+                            int[] layers, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        for (int boyIndex = 0; boyIndex < pairsNumber; boyIndex++) {
+            if (edgeOfBoy[boyIndex] == UNMATCHED) {
+                layers[boyIndex] = 0;
+                queue[tail++] = boyIndex;
+            } else {
+                layers[boyIndex] = UNREACHED;
+            }
+        }
+        int freeLayer = UNREACHED;
+        while (head < tail) {
+            int boyIndex = queue[head++];
+            if (freeLayer != UNREACHED && layers[boyIndex] >= freeLayer) {
+                break;
+            }
+            for (int incident = 0; incident < degree; incident++) {
+                int edge = incidentEdges[boyIndex * degree + incident];
+                int nextBoy = boyOfGirl[girls[edge]];
+                if (nextBoy == UNMATCHED) {
+                    freeLayer = layers[boyIndex];
+                } else if (freeLayer == UNREACHED
+                        && layers[nextBoy] == UNREACHED) {
+                    layers[nextBoy] = layers[boyIndex] + 1;
+                    queue[tail++] = nextBoy;
+                }
+            }
+        }
+        return freeLayer;
+    }
+
+    private void augment(int startBoy, int[] incidentEdges, int[] girls,
+                         int degree, int[] edgeOfBoy, int[] boyOfGirl,
+                         int[] layers, int freeLayer, int[] currentIncidents,
+                         int[] path) {
+        int pathLength = 0;
+        path[pathLength++] = startBoy;
+        while (pathLength > 0) {
+            int boyIndex = path[pathLength - 1];
+            if (currentIncidents[boyIndex] == degree) {
+                layers[boyIndex] = UNREACHED;
+                pathLength--;
+                if (pathLength > 0) {
+                    currentIncidents[path[pathLength - 1]]++;
+                }
+                continue;
+            }
+            int edge = incidentEdges[boyIndex * degree
+                    + currentIncidents[boyIndex]];
+            int nextBoy = boyOfGirl[girls[edge]];
+            if (nextBoy == UNMATCHED) {
+                if (layers[boyIndex] == freeLayer) {
+                    for (int pathIndex = 0; pathIndex < pathLength;
+                         pathIndex++) {
+                        int pathBoy = path[pathIndex];
+                        int pathEdge = incidentEdges[pathBoy * degree
+                                + currentIncidents[pathBoy]];
+                        edgeOfBoy[pathBoy] = pathEdge;
+                        boyOfGirl[girls[pathEdge]] = pathBoy;
+                    }
+                    return;
+                }
+                currentIncidents[boyIndex]++;
+            } else if (layers[nextBoy] == layers[boyIndex] + 1) {
+                path[pathLength++] = nextBoy;
+            } else {
+                currentIncidents[boyIndex]++;
+            }
+        }
+    }
+}
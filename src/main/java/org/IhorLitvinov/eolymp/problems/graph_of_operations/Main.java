@@ -1,16 +1,14 @@
 package org.IhorLitvinov.eolymp.problems.graph_of_operations;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 public class Main {
     private static final String XOR = "XOR";
     private static final String OR = "OR";
     private static final String AND = "AND";
-    private int[][] adjacencyMatrix;
+    private EdgeKeys edgeKeys;
     private TwoSatGraph graph;
 
     private FastScanner scanner;
@@ -82,13 +80,13 @@ public class Main {
     }
 
     private void join(int nodeFrom, int nodeTo) {
-        adjacencyMatrix[nodeFrom][nodeTo] = 1;
+        edgeKeys.add(nodeFrom, nodeTo);
     }
 
     private void scanData() {
         int nodesNumber = scanner.nextInt();
         int edgesNumber = scanner.nextInt();
-        adjacencyMatrix = new int[nodesNumber * 2][nodesNumber * 2];
+        edgeKeys = new EdgeKeys();
         for (int edgeIndex = 0; edgeIndex < edgesNumber; edgeIndex++) {
             int startNode = scanner.nextInt();
             int endNode = scanner.nextInt();
@@ -96,7 +94,7 @@ public class Main {
             String operator = scanner.next();
             parseData(startNode - 1, endNode - 1, value, operator);
         }
-        graph = new TwoSatGraph(adjacencyMatrix);
+        graph = new TwoSatGraph(nodesNumber * 2, edgeKeys);
     }
 
     private void solveProblem() {
@@ -118,11 +116,13 @@ public class Main {
 }
 
 interface OrientedGraph {
-    List<Integer> getChildren(int nodeIndex);
+    int[] getChildrenStarts();
 
-    List<Integer> getParents(int nodeIndex);
+    int[] getChildren();
 
-    int[][] getAdjacencyMatrix();
+    int[] getParentsStarts();
+
+    int[] getParents();
 
     void mark(int nodeIndex, int mark);
 
@@ -133,44 +133,89 @@ interface OrientedGraph {
     int getNodesNumber();
 }
 
+class EdgeKeys {
+    private static final int INITIAL_CAPACITY = 16;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public void add(int nodeFrom, int nodeTo) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = (long) nodeFrom << Integer.SIZE | nodeTo;
+    }
+
+    public long[] sortedUniqueKeys() {
+        Arrays.sort(keys, 0, size);
+        int uniqueSize = 0;
+        for (int keyIndex = 0; keyIndex < size; keyIndex++) {
+            if (uniqueSize == 0 || keys[uniqueSize - 1] != keys[keyIndex]) {
+                keys[uniqueSize++] = keys[keyIndex];
+            }
+        }
+        return Arrays.copyOf(keys, uniqueSize);
+    }
+
+    public static int nodeFrom(long key) {
+        return (int) (key >>> Integer.SIZE);
+    }
+
+    public static int nodeTo(long key) {
+        return (int) key;
+    }
+}
+
 class TwoSatGraph implements OrientedGraph {
-    private int[][] adjacencyMatrix;
+    private int[] childrenStarts;
+    private int[] children;
+    private int[] parentsStarts;
+    private int[] parents;
     private int[] marks;
     int nodesNumber;
 
-    public TwoSatGraph(int[][] adjacencyMatrix) {
-        this.adjacencyMatrix = adjacencyMatrix;
-        nodesNumber = adjacencyMatrix.length;
+    public TwoSatGraph(int nodesNumber, EdgeKeys edgeKeys) {
+        this.nodesNumber = nodesNumber;
         marks = new int[nodesNumber];
+        long[] keys = edgeKeys.sortedUniqueKeys();
+        childrenStarts = new int[nodesNumber + 1];
+        parentsStarts = new int[nodesNumber + 1];
+        for (long key : keys) {
+            childrenStarts[EdgeKeys.nodeFrom(key) + 1]++;
+            parentsStarts[EdgeKeys.nodeTo(key) + 1]++;
+        }
+        for (int nodeIndex = 0; nodeIndex < nodesNumber; nodeIndex++) {
+            childrenStarts[nodeIndex + 1] += childrenStarts[nodeIndex];
+            parentsStarts[nodeIndex + 1] += parentsStarts[nodeIndex];
+        }
+        children = new int[keys.length];
+        parents = new int[keys.length];
+        int[] parentsFilled = Arrays.copyOf(parentsStarts, nodesNumber);
+        for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+            children[keyIndex] = EdgeKeys.nodeTo(keys[keyIndex]);
+            int nodeTo = EdgeKeys.nodeTo(keys[keyIndex]);
+            parents[parentsFilled[nodeTo]++] =
+                    EdgeKeys.nodeFrom(keys[keyIndex]);
+        }
     }
 
     @Override
-    public List<Integer> getChildren(int nodeIndex) {
-        List<Integer> children = new ArrayList<>();
-        for (int adjacencyNodeIndex = 0;
-             adjacencyNodeIndex < nodesNumber; adjacencyNodeIndex++) {
-            if (adjacencyMatrix[nodeIndex][adjacencyNodeIndex] > 0) {
-                children.add(adjacencyNodeIndex);
-            }
-        }
+    public int[] getChildrenStarts() {
+        return childrenStarts;
+    }
+
+    @Override
+    public int[] getChildren() {
         return children;
     }
 
     @Override
-    public List<Integer> getParents(int nodeIndex) {
-        List<Integer> parents = new ArrayList<>();
-        for (int adjacencyNodeIndex = 0;
-             adjacencyNodeIndex < nodesNumber; adjacencyNodeIndex++) {
-            if (adjacencyMatrix[adjacencyNodeIndex][nodeIndex] > 0) {
-                parents.add(adjacencyNodeIndex);
-            }
-        }
-        return parents;
+    public int[] getParentsStarts() {
+        return parentsStarts;
     }
 
     @Override
-    public int[][] getAdjacencyMatrix() {
-        return adjacencyMatrix;
+    public int[] getParents() {
+        return parents;
     }
 
     @Override
@@ -196,17 +241,22 @@ class TwoSatGraph implements OrientedGraph {
 
 class TwoSatTester {
     public static boolean isSatisfiable(TwoSatGraph graph) {
-        List<Integer> sortedNodes = new ArrayList<>(graph.getNodesNumber());
-        for (int nodeIndex = 0; nodeIndex < graph.getNodesNumber(); nodeIndex++) {
-            topologicalSort(sortedNodes, graph, nodeIndex);
+        int nodesNumber = graph.getNodesNumber();
+        int[] sortedNodes = new int[nodesNumber];
+        int[] stack = new int[nodesNumber];
+        int[] nextEdges = new int[nodesNumber];
+        int sortedNumber = 0;
+        for (int nodeIndex = 0; nodeIndex < nodesNumber; nodeIndex++) {
+            sortedNumber = topologicalSort(sortedNodes, sortedNumber, graph,
+                    nodeIndex, stack, nextEdges);
         }
         graph.cleanMarks();
-        ListIterator<Integer> iterator = sortedNodes.listIterator(sortedNodes.size());
-        while (iterator.hasPrevious()) {
-            int nodeIndex = iterator.previous();
-            markComponent(graph, nodeIndex, nodeIndex + 1);
+        for (int sortedIndex = sortedNumber - 1; sortedIndex >= 0;
+             sortedIndex--) {
+            int nodeIndex = sortedNodes[sortedIndex];
+            markComponent(graph, nodeIndex, nodeIndex + 1, stack);
         }
-        for (int vertexIndex = 0; vertexIndex < graph.getNodesNumber() / 2; vertexIndex++) {
+        for (int vertexIndex = 0; vertexIndex < nodesNumber / 2; vertexIndex++) {
             if (graph.getMark(vertexIndex * 2) == graph.getMark(vertexIndex * 2 + 1)) {
                 return false;
             }
@@ -214,29 +264,54 @@ class TwoSatTester {
         return true;
     }
 
-    private static void topologicalSort(List<Integer> sortedNodes, OrientedGraph graph, int startNode) {
+    private static int topologicalSort(int[] sortedNodes, int sortedNumber,
+                                       OrientedGraph graph, int startNode,
+                                       int[] stack, int[] nextEdges) {
         if (graph.getMark(startNode) != 0) {
-            return;
+            return sortedNumber;
         }
+        int[] childrenStarts = graph.getChildrenStarts();
+        int[] children = graph.getChildren();
         graph.mark(startNode, 1);
-        int[][] adjacencyMatrix = graph.getAdjacencyMatrix();
-        for (int childIndex = 0; childIndex < adjacencyMatrix.length; childIndex++) {
-            if (adjacencyMatrix[startNode][childIndex] == 1) {
-                topologicalSort(sortedNodes, graph, childIndex);
+        nextEdges[startNode] = childrenStarts[startNode];
+        int stackSize = 0;
+        stack[stackSize++] = startNode;
+        while (stackSize > 0) {
+            int node = stack[stackSize - 1];
+            if (nextEdges[node] == childrenStarts[node + 1]) {
+                sortedNodes[sortedNumber++] = node;
+                stackSize--;
+                continue;
+            }
+            int child = children[nextEdges[node]++];
+            if (graph.getMark(child) == 0) {
+                graph.mark(child, 1);
+                nextEdges[child] = childrenStarts[child];
+                stack[stackSize++] = child;
             }
         }
-        sortedNodes.add(startNode);
+        return sortedNumber;
     }
 
-    private static void markComponent(OrientedGraph graph, int startNode, int mark) {
+    private static void markComponent(OrientedGraph graph, int startNode,
+                                      int mark, int[] stack) {
         if (graph.getMark(startNode) != 0) {
             return;
         }
+        int[] parentsStarts = graph.getParentsStarts();
+        int[] parents = graph.getParents();
         graph.mark(startNode, mark);
-        int[][] adjacencyMatrix = graph.getAdjacencyMatrix();
-        for (int parentIndex = 0; parentIndex < adjacencyMatrix.length; parentIndex++) {
-            if (adjacencyMatrix[parentIndex][startNode] == 1) {
-                markComponent(graph, parentIndex, mark);
+        int stackSize = 0;
+        stack[stackSize++] = startNode;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            for (int edge = parentsStarts[node]; edge < parentsStarts[node + 1];
+                 edge++) {
+                int parent = parents[edge];
+                if (graph.getMark(parent) == 0) {
+                    graph.mark(parent, mark);
+                    stack[stackSize++] = parent;
+                }
             }
         }
     }
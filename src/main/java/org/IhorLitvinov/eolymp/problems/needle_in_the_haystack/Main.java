@@ -1,36 +1,195 @@
 package org.IhorLitvinov.eolymp.problems.needle_in_the_haystack;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
 
 public class Main {
-    private BufferedReader bufferedReader;
+    private static final String MAPPED_MODE = "--mapped";
+    private static final String PARALLEL_MODE = "--parallel";
+    private static final String FOLLOW_MODE = "--follow";
+    private static final String INDEX_BUILD_MODE = "--index-build";
+    private static final String INDEX_QUERY_MODE = "--index-query";
+    private static final String MISMATCHES_MODE = "--mismatches";
+    private static final String EDITS_MODE = "--edits";
+    private static final String ASYNC_MODE = "--async";
+    private static final String MULTI_MODE = "--multi";
+    private static final long TRANSITIONS_MEMORY_BUDGET = 1L << 24;
+    private LineSource lineSource;
     private PrintWriter printWriter;
     private TextSource textSource;
+    private MappedTextSource parallelSource;
+    private ForkJoinPool pool;
+    private FmIndex index;
+    private int maxErrors = -1;
+    private boolean editsAllowed;
+    private boolean multiPatternSearch;
+    private String testHeader;
     private char[] pattern;
+    private char[][] patterns;
 
     public Main(BufferedReader bufferedReader, PrintWriter printWriter) {
+        this(bufferedReader::readLine,
+                new BufferedTextSource(bufferedReader), printWriter);
+    }
+
+    public Main(LineSource lineSource, TextSource textSource,
+                PrintWriter printWriter) {
+        this.lineSource = lineSource;
+        this.textSource = textSource;
         this.printWriter = printWriter;
-        this.bufferedReader = bufferedReader;
-        textSource = new BufferedTextSource(bufferedReader);
     }
 
-    public static void main(String[] args) throws IOException {
-        BufferedReader bufferedReader = new BufferedReader(
-                new FileReader(
-                        new File("input.txt")));
+    public void useParallelSearch(MappedTextSource parallelSource,
+                                  ForkJoinPool pool) {
+        this.parallelSource = parallelSource;
+        this.pool = pool;
+    }
+
+    public void useIndex(FmIndex index) {
+        this.index = index;
+    }
+
+    public void useApproximateSearch(int maxErrors, boolean editsAllowed) {
+        this.maxErrors = maxErrors;
+        this.editsAllowed = editsAllowed;
+    }
+
+    public void useMultiPatternSearch() {
+        multiPatternSearch = true;
+    }
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        String mode = args.length > 0 ? args[0] : "";
+        if (mode.equals(FOLLOW_MODE)) {
+            follow(new File(args[1]), args[2].toCharArray(),
+                    new File(args[3]),
+                    args.length > 4 ? Long.parseLong(args[4]) : 0);
+            return;
+        }
+        if (mode.equals(INDEX_BUILD_MODE)) {
+            buildIndex(new File(args[1]), new File(args[2]));
+            return;
+        }
         PrintWriter printWriter = new PrintWriter(new File("output.txt"));
-        Main main = new Main(bufferedReader, printWriter);
-        for (int testIndex = 0; main.hasMoreTests(); testIndex++) {
-            main.printSeparator(testIndex);
-            main.scanData();
-            main.solveProblem();
+        if (mode.equals(MAPPED_MODE) || mode.equals(PARALLEL_MODE)) {
+            MappedTextSource mappedTextSource =
+                    new MappedTextSource(new File("input.txt"));
+            Main main = new Main(mappedTextSource, mappedTextSource,
+                    printWriter);
+            if (mode.equals(PARALLEL_MODE)) {
+                main.useParallelSearch(mappedTextSource,
+                        ForkJoinPool.commonPool());
+            }
+            main.run();
+            mappedTextSource.close();
+        } else if (mode.equals(ASYNC_MODE)) {
+            File input = new File(args.length > 1 ? args[1] : "input.txt");
+            try (AsyncTextSource asyncTextSource = new AsyncTextSource(input)) {
+                new Main(asyncTextSource, asyncTextSource, printWriter).run();
+            }
+        } else if (mode.equals(INDEX_QUERY_MODE)) {
+            BufferedReader bufferedReader = new BufferedReader(
+                    new FileReader(
+                            new File("input.txt")));
+            Main main = new Main(bufferedReader, printWriter);
+            main.useIndex(FmIndex.load(new File(args[1])));
+            main.run();
+            bufferedReader.close();
+        } else if (mode.equals(MISMATCHES_MODE) || mode.equals(EDITS_MODE)) {
+            BufferedReader bufferedReader = new BufferedReader(
+                    new FileReader(
+                            new File("input.txt")));
+            Main main = new Main(bufferedReader, printWriter);
+            main.useApproximateSearch(Integer.parseInt(args[1]),
+                    mode.equals(EDITS_MODE));
+            main.run();
+            bufferedReader.close();
+        } else if (mode.equals(MULTI_MODE)) {
+            BufferedReader bufferedReader = new BufferedReader(
+                    new FileReader(
+                            new File("input.txt")));
+            Main main = new Main(bufferedReader, printWriter);
+            main.useMultiPatternSearch();
+            main.run();
+            bufferedReader.close();
+        } else {
+            BufferedReader bufferedReader = new BufferedReader(
+                    new FileReader(
+                            new File("input.txt")));
+            new Main(bufferedReader, printWriter).run();
+            bufferedReader.close();
         }
-        bufferedReader.close();
         printWriter.close();
     }
 
+    private static void follow(File haystack, char[] pattern,
+                               File checkpoint, long pollingInterval)
+            throws IOException, InterruptedException {
+        PrintWriter printWriter = new PrintWriter(System.out);
+        KmpAutomaton automaton =
+                new KmpAutomaton(pattern, TRANSITIONS_MEMORY_BUDGET);
+        MatcherState state = MatcherState.load(checkpoint, pattern);
+        do {
+            try (AppendedTextSource appendedText =
+                         new AppendedTextSource(haystack)) {
+                if (appendedText.getSize() < state.getSymbolsNumber()) {
+                    state = new MatcherState(pattern);
+                }
+                PatternsFinder patternsFinder =
+                        new PatternsFinder(appendedText, automaton, state);
+                appendedText.skip(state.getSymbolsNumber());
+                patternsFinder.kMPAlgorithm(printWriter::println);
+                state = patternsFinder.getState();
+            }
+            printWriter.flush();
+            state.save(checkpoint);
+            Thread.sleep(pollingInterval);
+        } while (pollingInterval > 0);
+    }
+
+    private static void buildIndex(File haystack, File indexFile)
+            throws IOException {
+        try (MappedTextSource mappedTextSource =
+                     new MappedTextSource(haystack)) {
+            long textSize = mappedTextSource.skipLine();
+            if (textSize > FmIndex.MAX_TEXT_SIZE) {
+                throw new IllegalArgumentException(
+                        "Haystack is too large for the index.");
+            }
+            byte[] text = new byte[(int) textSize];
+            mappedTextSource.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, textSize)
+                    .get(text);
+            FmIndex.build(text, text.length).save(indexFile);
+        }
+    }
+
+    private void run() throws IOException {
+        for (int testIndex = 0; hasMoreTests(); testIndex++) {
+            printSeparator(testIndex);
+            scanData();
+            solveProblem();
+        }
+    }
+
     private void printSeparator(int testIndex) {
         if (testIndex > 0) {
             printWriter.println();
@@ -38,30 +197,68 @@ public class Main {
     }
 
     private boolean hasMoreTests() throws IOException {
-        String patternSize = bufferedReader.readLine();
-        return patternSize != null;
+        testHeader = lineSource.readLine();
+        return testHeader != null;
     }
 
     private void scanData() throws IOException {
-        pattern = bufferedReader.readLine().toCharArray();
+        if (multiPatternSearch) {
+            int patternsNumber = Integer.parseInt(testHeader.trim());
+            patterns = new char[patternsNumber][];
+            for (int patternIndex = 0; patternIndex < patternsNumber;
+                 patternIndex++) {
+                patterns[patternIndex] = lineSource.readLine().toCharArray();
+            }
+            return;
+        }
+        pattern = lineSource.readLine().toCharArray();
     }
 
     private void solveProblem() {
-        PatternsFinder patternsFinder = new PatternsFinder(textSource, pattern);
-        List<Integer> patternPositions = patternsFinder
-                .kMPAlgorithm();
-        printAnswer(patternPositions);
-    }
-
-    private void printAnswer(List<Integer> patternPositions) {
-        if (!patternPositions.isEmpty()) {
-            patternPositions
-                    .stream()
-                    .forEach(printWriter::println);
+        if (multiPatternSearch) {
+            MultiPatternsFinder patternsFinder =
+                    new MultiPatternsFinder(textSource, patterns);
+            patternsFinder.ahoCorasickAlgorithm((patternIndex, position) ->
+                    printWriter.println(patternIndex + " " + position));
+            return;
+        }
+        if (index != null) {
+            index.find(pattern, printWriter::println);
+            return;
+        }
+        if (maxErrors >= 0) {
+            ApproximatePatternsFinder patternsFinder =
+                    new ApproximatePatternsFinder(textSource, pattern, maxErrors);
+            ApproximateMatchConsumer printer = (endPosition, errors) ->
+                    printWriter.println(endPosition + " " + errors);
+            if (editsAllowed) {
+                patternsFinder.editsAlgorithm(printer);
+            } else {
+                patternsFinder.mismatchesAlgorithm(printer);
+            }
+            return;
+        }
+        KmpAutomaton automaton =
+                new KmpAutomaton(pattern, TRANSITIONS_MEMORY_BUDGET);
+        if (pool != null) {
+            long textStart = parallelSource.getPosition();
+            long textEnd = parallelSource.skipLine();
+            ParallelPatternsFinder patternsFinder = new ParallelPatternsFinder(
+                    parallelSource.getChannel(), textStart, textEnd,
+                    automaton, pool);
+            patternsFinder.kMPAlgorithm(printWriter::println);
+        } else {
+            PatternsFinder patternsFinder =
+                    new PatternsFinder(textSource, automaton);
+            patternsFinder.find(printWriter::println);
         }
     }
 }
 
+interface LineSource {
+    String readLine() throws IOException;
+}
+
 class BufferedTextSource implements TextSource {
     private final char END_OF_LINE = '\n';
     private BufferedReader bufferedReader;
@@ -105,67 +302,1764 @@ class BufferedTextSource implements TextSource {
     }
 }
 
+class AsyncTextSource implements TextSource, LineSource, Closeable {
+    private static final int BUFFERS_NUMBER = 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String GZIP_EXTENSION = ".gz";
+    private final byte END_OF_LINE = '\n';
+    private final byte CARRIAGE_RETURN = '\r';
+    private InputStream input;
+    private Thread reader;
+    private BlockingQueue<ReadBuffer> freeBuffers =
+            new ArrayBlockingQueue<>(BUFFERS_NUMBER);
+    private BlockingQueue<ReadBuffer> filledBuffers =
+            new ArrayBlockingQueue<>(BUFFERS_NUMBER + 1);
+    private ReadBuffer current;
+    private int currentIndex;
+    private boolean endOfInput;
+
+    private static class ReadBuffer {
+        private byte[] data;
+        private int length;
+        private IOException error;
+
+        ReadBuffer(int size) {
+            data = new byte[size];
+        }
+    }
+
+    public AsyncTextSource(File file) throws IOException {
+        input = new FileInputStream(file);
+        if (file.getName().endsWith(GZIP_EXTENSION)) {
+            input = new GZIPInputStream(input, BUFFER_SIZE);
+        }
+        for (int bufferIndex = 0; bufferIndex < BUFFERS_NUMBER; bufferIndex++) {
+            freeBuffers.add(new ReadBuffer(BUFFER_SIZE));
+        }
+        reader = new Thread(this::readInput, "haystack-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readInput() {
+        try {
+            ReadBuffer buffer;
+            do {
+                buffer = freeBuffers.take();
+                buffer.length = fill(buffer.data);
+                filledBuffers.put(buffer);
+            } while (buffer.length == buffer.data.length);
+        } catch (IOException e) {
+            ReadBuffer failedBuffer = new ReadBuffer(0);
+            failedBuffer.error = e;
+            filledBuffers.offer(failedBuffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int fill(byte[] data) throws IOException {
+        int length = 0;
+        while (length < data.length) {
+            int read = input.read(data, length, data.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private boolean fillCurrent() {
+        while (current == null || currentIndex >= current.length) {
+            if (endOfInput) {
+                return false;
+            }
+            if (current != null) {
+                freeBuffers.add(current);
+            }
+            try {
+                current = filledBuffers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            if (current.error != null) {
+                throw new RuntimeException(current.error);
+            }
+            currentIndex = 0;
+            endOfInput = current.length < current.data.length;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fillCurrent()) {
+            return false;
+        }
+        if (current.data[currentIndex] == END_OF_LINE) {
+            currentIndex++;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int nextChar() {
+        if (!fillCurrent()) {
+            return -1;
+        }
+        return current.data[currentIndex++] & 0xFF;
+    }
+
+    @Override
+    public int nextChars(char[] buffer, int offset, int length) {
+        int read = 0;
+        while (read < length && fillCurrent()) {
+            byte[] data = current.data;
+            int available = Math.min(current.length - currentIndex,
+                    length - read);
+            for (int index = 0; index < available; index++) {
+                byte symbol = data[currentIndex + index];
+                if (symbol == END_OF_LINE) {
+                    currentIndex += index + 1;
+                    return read + index;
+                }
+                buffer[offset + read + index] = (char) (symbol & 0xFF);
+            }
+            read += available;
+            currentIndex += available;
+        }
+        return read;
+    }
+
+    @Override
+    public String readLine() {
+        if (!fillCurrent()) {
+            return null;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (fillCurrent()) {
+            byte symbol = current.data[currentIndex++];
+            if (symbol == END_OF_LINE) {
+                break;
+            }
+            line.write(symbol);
+        }
+        byte[] lineBytes = line.toByteArray();
+        int lineLength = lineBytes.length;
+        if (lineLength > 0 && lineBytes[lineLength - 1] == CARRIAGE_RETURN) {
+            lineLength--;
+        }
+        return new String(lineBytes, 0, lineLength,
+                StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        input.close();
+    }
+}
+
+class AppendedTextSource implements TextSource, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private FileInputStream file;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long size;
+    private long position;
+
+    public AppendedTextSource(File file) throws IOException {
+        this.file = new FileInputStream(file);
+        channel = this.file.getChannel();
+        size = channel.size();
+        buffer.flip();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void skip(long symbolsNumber) {
+        position = symbolsNumber;
+        buffer.clear();
+        buffer.flip();
+    }
+
+    private boolean fillBuffer() {
+        if (buffer.hasRemaining()) {
+            return true;
+        }
+        if (position >= size) {
+            return false;
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(BUFFER_SIZE, size - position));
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        buffer.flip();
+        position += buffer.limit();
+        return buffer.hasRemaining();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fillBuffer();
+    }
+
+    @Override
+    public int nextChar() {
+        if (!fillBuffer()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int nextChars(char[] chars, int offset, int length) {
+        int read = 0;
+        while (read < length && fillBuffer()) {
+            int available = Math.min(buffer.remaining(), length - read);
+            for (int index = 0; index < available; index++) {
+                chars[offset + read + index] = (char) (buffer.get() & 0xFF);
+            }
+            read += available;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
+
 interface TextSource {
     boolean hasNext();
 
     int nextChar();
+
+    default int nextChars(char[] buffer, int offset, int length) {
+        int read = 0;
+        while (read < length && hasNext()) {
+            buffer[offset + read] = (char) nextChar();
+            read++;
+        }
+        return read;
+    }
+}
+
+class MappedTextSource implements TextSource, LineSource, Closeable {
+    private static final long MAX_WINDOW_SIZE = 1L << 28;
+    private final byte END_OF_LINE = '\n';
+    private final byte CARRIAGE_RETURN = '\r';
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowSize;
+    private long position;
+
+    public MappedTextSource(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+        fileSize = channel.size();
+    }
+
+    private int windowOffset(long filePosition) {
+        if (window == null || filePosition < windowStart
+                || filePosition >= windowStart + windowSize) {
+            map(filePosition);
+        }
+        return (int) (filePosition - windowStart);
+    }
+
+    private byte byteAt(long filePosition) {
+        int windowOffset = windowOffset(filePosition);
+        return window.get(windowOffset);
+    }
+
+    private void map(long filePosition) {
+        windowStart = filePosition;
+        windowSize = (int) Math.min(MAX_WINDOW_SIZE, fileSize - filePosition);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    windowStart, windowSize);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position >= fileSize) {
+            return false;
+        }
+        if (byteAt(position) == END_OF_LINE) {
+            position++;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int nextChar() {
+        if (position >= fileSize) {
+            return -1;
+        }
+        int nextChar = byteAt(position) & 0xFF;
+        position++;
+        return nextChar;
+    }
+
+    @Override
+    public int nextChars(char[] buffer, int offset, int length) {
+        int read = 0;
+        while (read < length && position < fileSize) {
+            int windowOffset = windowOffset(position);
+            int available = Math.min(windowSize - windowOffset, length - read);
+            for (int index = 0; index < available; index++) {
+                byte symbol = window.get(windowOffset + index);
+                if (symbol == END_OF_LINE) {
+                    position += index + 1;
+                    return read + index;
+                }
+                buffer[offset + read + index] = (char) (symbol & 0xFF);
+            }
+            read += available;
+            position += available;
+        }
+        return read;
+    }
+
+    @Override
+    public String readLine() {
+        if (position >= fileSize) {
+            return null;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (position < fileSize) {
+            byte symbol = byteAt(position);
+            position++;
+            if (symbol == END_OF_LINE) {
+                break;
+            }
+            line.write(symbol);
+        }
+        byte[] lineBytes = line.toByteArray();
+        int lineLength = lineBytes.length;
+        if (lineLength > 0 && lineBytes[lineLength - 1] == CARRIAGE_RETURN) {
+            lineLength--;
+        }
+        return new String(lineBytes, 0, lineLength,
+                StandardCharsets.ISO_8859_1);
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long skipLine() {
+        while (position < fileSize) {
+            int windowOffset = windowOffset(position);
+            for (int index = windowOffset; index < windowSize; index++) {
+                if (window.get(index) == END_OF_LINE) {
+                    long lineEnd = windowStart + index;
+                    position = lineEnd + 1;
+                    return lineEnd;
+                }
+            }
+            position = windowStart + windowSize;
+        }
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
 }
 
 class PatternsFinder {
+    private static final int BUFFER_SIZE = 1 << 16;
     private TextSource source;
-    private char[] pattern;
-    private int[] patternPrefixFunctions;
+    private KmpAutomaton automaton;
     private int numberOfMatchingSymbols = 0;
-    private char nextElement;
+    private long symbolsNumber = 0;
 
     public PatternsFinder(TextSource source, char[] pattern) {
+        this(source, new KmpAutomaton(pattern));
+    }
+
+    public PatternsFinder(TextSource source, KmpAutomaton automaton) {
         this.source = source;
-        this.pattern = pattern;
-        patternPrefixFunctions = new int[pattern.length];
+        this.automaton = automaton;
+    }
+
+    public PatternsFinder(TextSource source, KmpAutomaton automaton,
+                          MatcherState state) {
+        this(source, automaton);
+        numberOfMatchingSymbols = state.getNumberOfMatchingSymbols();
+        symbolsNumber = state.getSymbolsNumber();
+    }
+
+    public MatcherState getState() {
+        return new MatcherState(automaton.getPattern(),
+                numberOfMatchingSymbols, symbolsNumber);
     }
 
     private void checkPatternSize() {
-        if (pattern.length == 0) {
+        if (automaton.getPatternLength() == 0) {
             throw new IllegalArgumentException("Pattern size is 0.");
         }
     }
 
     public List<Integer> kMPAlgorithm() {
-        checkPatternSize();
         List<Integer> patternPositions = new ArrayList<>();
-        for (int symbolIndex = 1; source.hasNext(); symbolIndex++) {
-            if (symbolIndex < pattern.length) {
-                nextElement = pattern[symbolIndex];
-            } else {
-                nextElement = (char) source.nextChar();
+        kMPAlgorithm(position ->
+                patternPositions.add(Math.toIntExact(position)));
+        return patternPositions;
+    }
+
+    public void kMPAlgorithm(LongConsumer consumer) {
+        checkPatternSize();
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        do {
+            read = source.nextChars(buffer, 0, BUFFER_SIZE);
+            scan(buffer, 0, read, consumer);
+        } while (read == BUFFER_SIZE);
+    }
+
+    public void scan(char[] text, int from, int to, LongConsumer consumer) {
+        numberOfMatchingSymbols = automaton.scan(numberOfMatchingSymbols,
+                text, from, to, symbolsNumber, consumer);
+        symbolsNumber += to - from;
+    }
+
+    public void find(LongConsumer consumer) {
+        checkPatternSize();
+        char[] window = new char[automaton.getPatternLength() - 1 + BUFFER_SIZE];
+        int read = source.nextChars(window, 0, window.length);
+        SearchEngine engine = SearchEngines.choose(automaton, window, read);
+        searchWindows(engine, window, read, consumer);
+    }
+
+    public void find(SearchEngine engine, LongConsumer consumer) {
+        checkPatternSize();
+        char[] window = new char[engine.getPatternLength() - 1 + BUFFER_SIZE];
+        int read = source.nextChars(window, 0, window.length);
+        searchWindows(engine, window, read, consumer);
+    }
+
+    private void searchWindows(SearchEngine engine, char[] window,
+                               int read, LongConsumer consumer) {
+        int overlap = engine.getPatternLength() - 1;
+        int filled = 0;
+        int requested = window.length;
+        for (; ; ) {
+            int windowEnd = filled + read;
+            engine.search(window, 0, windowEnd,
+                    symbolsNumber - filled, consumer);
+            symbolsNumber += read;
+            if (read < requested) {
+                return;
             }
-            while (needToReduceNumberOfMatchingSymbols()) {
-                numberOfMatchingSymbols =
-                        patternPrefixFunctions[numberOfMatchingSymbols - 1];
+            filled = Math.min(overlap, windowEnd);
+            System.arraycopy(window, windowEnd - filled, window, 0, filled);
+            requested = window.length - filled;
+            read = source.nextChars(window, filled, requested);
+        }
+    }
+}
+
+class FmIndex {
+    public static final int MAX_TEXT_SIZE = Integer.MAX_VALUE - 64;
+    private static final int MAGIC = 0x464D4958;
+    private static final int ALPHABET_SIZE = 256;
+    private static final int BLOCK_SIZE = 256;
+    private static final int SAMPLE_RATE = 32;
+    private int rowsNumber;
+    private int primaryRow;
+    private int symbolsNumber;
+    private int[] symbolRanks = new int[ALPHABET_SIZE];
+    private int[] firstRows;
+    private ByteBuffer transform;
+    private IntBuffer occurrences;
+    private LongBuffer sampledRows;
+    private IntBuffer sampledRowsRanks;
+    private IntBuffer samples;
+
+    private FmIndex() {
+    }
+
+    public static FmIndex build(byte[] text, int textSize) {
+        FmIndex index = new FmIndex();
+        int[] suffixArray = SuffixArrays.build(text, textSize);
+        index.rowsNumber = textSize + 1;
+        index.computeAlphabet(text, textSize);
+        index.computeTransform(text, suffixArray);
+        index.computeOccurrences();
+        index.computeSamples(suffixArray);
+        return index;
+    }
+
+    private void computeAlphabet(byte[] text, int textSize) {
+        int[] symbolCounts = new int[ALPHABET_SIZE];
+        for (int index = 0; index < textSize; index++) {
+            symbolCounts[text[index] & (ALPHABET_SIZE - 1)]++;
+        }
+        Arrays.fill(symbolRanks, -1);
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            if (symbolCounts[symbol] > 0) {
+                symbolRanks[symbol] = symbolsNumber++;
             }
-            if (nextElement == pattern[numberOfMatchingSymbols]) {
-                numberOfMatchingSymbols++;
+        }
+        firstRows = new int[symbolsNumber + 1];
+        firstRows[0] = 1;
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int rank = symbolRanks[symbol];
+            if (rank >= 0) {
+                firstRows[rank + 1] = firstRows[rank] + symbolCounts[symbol];
+            }
+        }
+    }
+
+    private void computeTransform(byte[] text, int[] suffixArray) {
+        transform = ByteBuffer.allocate(rowsNumber);
+        for (int row = 0; row < rowsNumber; row++) {
+            int suffix = suffixArray[row];
+            if (suffix == 0) {
+                primaryRow = row;
+            } else {
+                transform.put(row, (byte) symbolRanks[text[suffix - 1]
+                        & (ALPHABET_SIZE - 1)]);
+            }
+        }
+    }
+
+    private void computeOccurrences() {
+        int blocksNumber = rowsNumber / BLOCK_SIZE + 1;
+        occurrences = IntBuffer.allocate(
+                checkedSize((long) blocksNumber * symbolsNumber));
+        int[] counts = new int[symbolsNumber];
+        for (int row = 0; row < rowsNumber; row++) {
+            if (row % BLOCK_SIZE == 0) {
+                occurrences.position(row / BLOCK_SIZE * symbolsNumber);
+                occurrences.put(counts);
             }
-            if (symbolIndex < pattern.length) {
-                patternPrefixFunctions[symbolIndex] = numberOfMatchingSymbols;
+            if (row != primaryRow) {
+                counts[transform.get(row) & (ALPHABET_SIZE - 1)]++;
             }
-            if (numberOfMatchingSymbols == pattern.length) {
-                addPatternPosition(patternPositions, symbolIndex);
+        }
+        if (rowsNumber % BLOCK_SIZE == 0) {
+            occurrences.position(rowsNumber / BLOCK_SIZE * symbolsNumber);
+            occurrences.put(counts);
+        }
+        occurrences.clear();
+    }
+
+    private void computeSamples(int[] suffixArray) {
+        int wordsNumber = (rowsNumber + Long.SIZE - 1) / Long.SIZE;
+        sampledRows = LongBuffer.allocate(wordsNumber);
+        sampledRowsRanks = IntBuffer.allocate(wordsNumber);
+        samples = IntBuffer.allocate(
+                (rowsNumber + SAMPLE_RATE - 1) / SAMPLE_RATE + 1);
+        int samplesNumber = 0;
+        for (int word = 0; word < wordsNumber; word++) {
+            sampledRowsRanks.put(word, samplesNumber);
+            long wordBits = 0;
+            int lastRow = Math.min(rowsNumber, (word + 1) * Long.SIZE);
+            for (int row = word * Long.SIZE; row < lastRow; row++) {
+                if (suffixArray[row] % SAMPLE_RATE == 0) {
+                    wordBits |= 1L << (row % Long.SIZE);
+                    samples.put(samplesNumber++, suffixArray[row]);
+                }
             }
+            sampledRows.put(word, wordBits);
         }
-        return patternPositions;
     }
 
-    private boolean needToReduceNumberOfMatchingSymbols() {
-        return numberOfMatchingSymbols == pattern.length
-                || (numberOfMatchingSymbols > 0
-                && nextElement != pattern[numberOfMatchingSymbols]);
+    private static int checkedSize(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Haystack is too large for the index.");
+        }
+        return (int) size;
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(rowsNumber);
+            output.writeInt(primaryRow);
+            output.writeInt(symbolsNumber);
+            for (int symbolRank : symbolRanks) {
+                output.writeInt(symbolRank);
+            }
+            for (int firstRow : firstRows) {
+                output.writeInt(firstRow);
+            }
+            output.writeInt(occurrences.capacity());
+            output.writeInt(sampledRows.capacity());
+            output.writeInt(samples.capacity());
+            output.write(transform.array());
+            for (int index = 0; index < occurrences.capacity(); index++) {
+                output.writeInt(occurrences.get(index));
+            }
+            for (int index = 0; index < sampledRows.capacity(); index++) {
+                output.writeLong(sampledRows.get(index));
+                output.writeInt(sampledRowsRanks.get(index));
+            }
+            for (int index = 0; index < samples.capacity(); index++) {
+                output.writeInt(samples.get(index));
+            }
+        }
     }
 
-    private void addPatternPosition(List<Integer> patternPositions, int elementIndex) {
-        int position = elementIndex - 2 * pattern.length + 1;
-        if (position >= 0) {
-            patternPositions.add(position);
+    public static FmIndex load(File file) throws IOException {
+        FmIndex index = new FmIndex();
+        try (RandomAccessFile indexFile = new RandomAccessFile(file, "r")) {
+            if (indexFile.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an index file.");
+            }
+            index.rowsNumber = indexFile.readInt();
+            index.primaryRow = indexFile.readInt();
+            index.symbolsNumber = indexFile.readInt();
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                index.symbolRanks[symbol] = indexFile.readInt();
+            }
+            index.firstRows = new int[index.symbolsNumber + 1];
+            for (int rank = 0; rank <= index.symbolsNumber; rank++) {
+                index.firstRows[rank] = indexFile.readInt();
+            }
+            int occurrencesSize = indexFile.readInt();
+            int wordsNumber = indexFile.readInt();
+            int samplesSize = indexFile.readInt();
+            FileChannel channel = indexFile.getChannel();
+            long offset = indexFile.getFilePointer();
+            index.transform = map(channel, offset, index.rowsNumber);
+            offset += index.rowsNumber;
+            index.occurrences = map(channel, offset,
+                    (long) occurrencesSize * Integer.BYTES).asIntBuffer();
+            offset += (long) occurrencesSize * Integer.BYTES;
+            ByteBuffer sampledRowsWords = map(channel, offset,
+                    (long) wordsNumber * (Long.BYTES + Integer.BYTES));
+            index.sampledRows = LongBuffer.allocate(wordsNumber);
+            index.sampledRowsRanks = IntBuffer.allocate(wordsNumber);
+            for (int word = 0; word < wordsNumber; word++) {
+                index.sampledRows.put(word, sampledRowsWords.getLong());
+                index.sampledRowsRanks.put(word, sampledRowsWords.getInt());
+            }
+            offset += (long) wordsNumber * (Long.BYTES + Integer.BYTES);
+            index.samples = map(channel, offset,
+                    (long) samplesSize * Integer.BYTES).asIntBuffer();
         }
+        return index;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long offset,
+                                        long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                checkedSize(size));
     }
-}
\ No newline at end of file
+
+    private int occurrences(int rank, int row) {
+        int blockStart = row - row % BLOCK_SIZE;
+        int occurrencesNumber = occurrences.get(
+                blockStart / BLOCK_SIZE * symbolsNumber + rank);
+        for (int blockRow = blockStart; blockRow < row; blockRow++) {
+            if (transform.get(blockRow) == (byte) rank
+                    && blockRow != primaryRow) {
+                occurrencesNumber++;
+            }
+        }
+        return occurrencesNumber;
+    }
+
+    private boolean isSampled(int row) {
+        return (sampledRows.get(row / Long.SIZE)
+                & (1L << (row % Long.SIZE))) != 0;
+    }
+
+    private int sample(int row) {
+        int word = row / Long.SIZE;
+        long lowerBits = sampledRows.get(word)
+                & ((1L << (row % Long.SIZE)) - 1);
+        return samples.get(sampledRowsRanks.get(word)
+                + Long.bitCount(lowerBits));
+    }
+
+    private int locate(int row) {
+        int steps = 0;
+        while (!isSampled(row)) {
+            int rank = transform.get(row) & (ALPHABET_SIZE - 1);
+            row = firstRows[rank] + occurrences(rank, row);
+            steps++;
+        }
+        return sample(row) + steps;
+    }
+
+    public void find(char[] pattern, LongConsumer consumer) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Pattern size is 0.");
+        }
+        int firstRow = 0;
+        int lastRow = rowsNumber;
+        for (int index = pattern.length - 1;
+             index >= 0 && firstRow < lastRow; index--) {
+            char symbol = pattern[index];
+            int rank = symbol < ALPHABET_SIZE ? symbolRanks[symbol] : -1;
+            if (rank < 0) {
+                return;
+            }
+            firstRow = firstRows[rank] + occurrences(rank, firstRow);
+            lastRow = firstRows[rank] + occurrences(rank, lastRow);
+        }
+        if (firstRow >= lastRow) {
+            return;
+        }
+        int[] positions = new int[lastRow - firstRow];
+        for (int row = firstRow; row < lastRow; row++) {
+            positions[row - firstRow] = locate(row);
+        }
+        Arrays.sort(positions);
+        for (int position : positions) {
+            consumer.accept(position);
+        }
+    }
+}
+
+class SuffixArrays {
+    private static final int ALPHABET_SIZE = 256;
+
+    public static int[] build(byte[] text, int textSize) {
+        int suffixesNumber = textSize + 1;
+        int[] suffixArray = new int[suffixesNumber];
+        int[] ranks = new int[suffixesNumber];
+        int[] sortedBySecondKey = new int[suffixesNumber];
+        int[] nextRanks = new int[suffixesNumber];
+        for (int index = 0; index < textSize; index++) {
+            ranks[index] = (text[index] & (ALPHABET_SIZE - 1)) + 1;
+        }
+        for (int index = 0; index < suffixesNumber; index++) {
+            sortedBySecondKey[index] = index;
+        }
+        int ranksNumber = ALPHABET_SIZE + 1;
+        countingSort(sortedBySecondKey, ranks, suffixArray, ranksNumber);
+        for (int length = 1; ; length <<= 1) {
+            int sortedNumber = 0;
+            for (int index = suffixesNumber - length;
+                 index < suffixesNumber; index++) {
+                sortedBySecondKey[sortedNumber++] = index;
+            }
+            for (int suffix : suffixArray) {
+                if (suffix >= length) {
+                    sortedBySecondKey[sortedNumber++] = suffix - length;
+                }
+            }
+            countingSort(sortedBySecondKey, ranks, suffixArray, ranksNumber);
+            nextRanks[suffixArray[0]] = 0;
+            ranksNumber = 1;
+            for (int index = 1; index < suffixesNumber; index++) {
+                int current = suffixArray[index];
+                int previous = suffixArray[index - 1];
+                if (ranks[current] != ranks[previous]
+                        || secondRank(ranks, current, length)
+                        != secondRank(ranks, previous, length)) {
+                    ranksNumber++;
+                }
+                nextRanks[current] = ranksNumber - 1;
+            }
+            int[] swap = ranks;
+            ranks = nextRanks;
+            nextRanks = swap;
+            if (ranksNumber == suffixesNumber) {
+                return suffixArray;
+            }
+        }
+    }
+
+    private static int secondRank(int[] ranks, int suffix, int length) {
+        return suffix + length < ranks.length ? ranks[suffix + length] : -1;
+    }
+
+    private static void countingSort(int[] suffixes, int[] ranks,
+                                     int[] sortedSuffixes, int ranksNumber) {
+        int[] counts = new int[ranksNumber + 1];
+        for (int suffix : suffixes) {
+            counts[ranks[suffix] + 1]++;
+        }
+        for (int rank = 1; rank <= ranksNumber; rank++) {
+            counts[rank] += counts[rank - 1];
+        }
+        for (int suffix : suffixes) {
+            sortedSuffixes[counts[ranks[suffix]]++] = suffix;
+        }
+    }
+}
+
+class MatcherState {
+    private char[] pattern;
+    private int numberOfMatchingSymbols;
+    private long symbolsNumber;
+
+    public MatcherState(char[] pattern) {
+        this(pattern, 0, 0);
+    }
+
+    public MatcherState(char[] pattern, int numberOfMatchingSymbols,
+                        long symbolsNumber) {
+        this.pattern = pattern;
+        this.numberOfMatchingSymbols = numberOfMatchingSymbols;
+        this.symbolsNumber = symbolsNumber;
+    }
+
+    public static MatcherState load(File file, char[] pattern)
+            throws IOException {
+        if (!file.exists()) {
+            return new MatcherState(pattern);
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            int savedPatternLength = input.readInt();
+            if (savedPatternLength != pattern.length) {
+                return new MatcherState(pattern);
+            }
+            for (char symbol : pattern) {
+                if (input.readChar() != symbol) {
+                    return new MatcherState(pattern);
+                }
+            }
+            int numberOfMatchingSymbols = input.readInt();
+            long symbolsNumber = input.readLong();
+            return new MatcherState(pattern,
+                    numberOfMatchingSymbols, symbolsNumber);
+        }
+    }
+
+    public void save(File file) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(temporaryFile)))) {
+            output.writeInt(pattern.length);
+            for (char symbol : pattern) {
+                output.writeChar(symbol);
+            }
+            output.writeInt(numberOfMatchingSymbols);
+            output.writeLong(symbolsNumber);
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getNumberOfMatchingSymbols() {
+        return numberOfMatchingSymbols;
+    }
+
+    public long getSymbolsNumber() {
+        return symbolsNumber;
+    }
+}
+
+interface SearchEngine {
+    int getPatternLength();
+
+    void search(char[] text, int from, int to,
+                long firstSymbolIndex, LongConsumer consumer);
+}
+
+class SearchEngines {
+    private static final int MIN_SKIP_PATTERN_LENGTH = 4;
+    private static final int LONG_PATTERN_LENGTH = 32;
+    private static final int LARGE_ALPHABET_SIZE = 16;
+    private static final int SAMPLE_SIZE = 1 << 12;
+    private static final int SAMPLE_ALPHABET_SIZE = 256;
+
+    public static SearchEngine choose(KmpAutomaton automaton,
+                                      char[] sample, int sampleSize) {
+        char[] pattern = automaton.getPattern();
+        if (pattern.length < MIN_SKIP_PATTERN_LENGTH) {
+            return automaton;
+        }
+        if (pattern.length >= LONG_PATTERN_LENGTH) {
+            return new TwoWayEngine(pattern);
+        }
+        if (alphabetSize(sample, Math.min(sampleSize, SAMPLE_SIZE))
+                >= LARGE_ALPHABET_SIZE) {
+            return new HorspoolEngine(pattern);
+        }
+        return automaton;
+    }
+
+    private static int alphabetSize(char[] sample, int sampleSize) {
+        boolean[] seenSymbols = new boolean[SAMPLE_ALPHABET_SIZE];
+        int alphabetSize = 0;
+        for (int index = 0; index < sampleSize; index++) {
+            int symbol = sample[index] & (SAMPLE_ALPHABET_SIZE - 1);
+            if (!seenSymbols[symbol]) {
+                seenSymbols[symbol] = true;
+                alphabetSize++;
+            }
+        }
+        return alphabetSize;
+    }
+}
+
+class HorspoolEngine implements SearchEngine {
+    private static final int SHIFTS_SIZE = 256;
+    private char[] pattern;
+    private int[] shifts = new int[SHIFTS_SIZE];
+
+    public HorspoolEngine(char[] pattern) {
+        this.pattern = pattern;
+        Arrays.fill(shifts, pattern.length);
+        for (int index = 0; index < pattern.length - 1; index++) {
+            shifts[pattern[index] & (SHIFTS_SIZE - 1)] =
+                    pattern.length - 1 - index;
+        }
+    }
+
+    @Override
+    public int getPatternLength() {
+        return pattern.length;
+    }
+
+    @Override
+    public void search(char[] text, int from, int to,
+                       long firstSymbolIndex, LongConsumer consumer) {
+        int lastIndex = pattern.length - 1;
+        char lastSymbol = pattern[lastIndex];
+        int windowStart = from;
+        while (windowStart <= to - pattern.length) {
+            char symbol = text[windowStart + lastIndex];
+            if (symbol == lastSymbol && matchesAt(text, windowStart)) {
+                consumer.accept(firstSymbolIndex + windowStart - from);
+            }
+            windowStart += shifts[symbol & (SHIFTS_SIZE - 1)];
+        }
+    }
+
+    private boolean matchesAt(char[] text, int windowStart) {
+        for (int index = pattern.length - 2; index >= 0; index--) {
+            if (text[windowStart + index] != pattern[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+class TwoWayEngine implements SearchEngine {
+    private char[] pattern;
+    private int criticalPosition;
+    private int period;
+    private boolean periodic;
+
+    public TwoWayEngine(char[] pattern) {
+        this.pattern = pattern;
+        int[] ascendingPeriod = new int[1];
+        int[] descendingPeriod = new int[1];
+        int ascendingSuffix = maximalSuffix(ascendingPeriod, false);
+        int descendingSuffix = maximalSuffix(descendingPeriod, true);
+        if (ascendingSuffix > descendingSuffix) {
+            criticalPosition = ascendingSuffix;
+            period = ascendingPeriod[0];
+        } else {
+            criticalPosition = descendingSuffix;
+            period = descendingPeriod[0];
+        }
+        periodic = hasPeriodicPrefix();
+        if (!periodic) {
+            period = Math.max(criticalPosition + 1,
+                    pattern.length - criticalPosition - 1) + 1;
+        }
+    }
+
+    private int maximalSuffix(int[] suffixPeriod, boolean reversed) {
+        int suffixStart = -1;
+        int candidate = 0;
+        int offset = 1;
+        int period = 1;
+        while (candidate + offset < pattern.length) {
+            char candidateSymbol = pattern[candidate + offset];
+            char suffixSymbol = pattern[suffixStart + offset];
+            if (candidateSymbol == suffixSymbol) {
+                if (offset != period) {
+                    offset++;
+                } else {
+                    candidate += period;
+                    offset = 1;
+                }
+            } else if ((candidateSymbol < suffixSymbol) != reversed) {
+                candidate += offset;
+                offset = 1;
+                period = candidate - suffixStart;
+            } else {
+                suffixStart = candidate;
+                candidate = suffixStart + 1;
+                offset = 1;
+                period = 1;
+            }
+        }
+        suffixPeriod[0] = period;
+        return suffixStart;
+    }
+
+    private boolean hasPeriodicPrefix() {
+        if (period + criticalPosition + 1 > pattern.length) {
+            return false;
+        }
+        for (int index = 0; index <= criticalPosition; index++) {
+            if (pattern[index] != pattern[index + period]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getPatternLength() {
+        return pattern.length;
+    }
+
+    @Override
+    public void search(char[] text, int from, int to,
+                       long firstSymbolIndex, LongConsumer consumer) {
+        if (periodic) {
+            searchPeriodic(text, from, to, firstSymbolIndex, consumer);
+        } else {
+            searchNonPeriodic(text, from, to, firstSymbolIndex, consumer);
+        }
+    }
+
+    private void searchPeriodic(char[] text, int from, int to,
+                                long firstSymbolIndex, LongConsumer consumer) {
+        int memory = -1;
+        int windowStart = from;
+        while (windowStart <= to - pattern.length) {
+            int index = Math.max(criticalPosition, memory) + 1;
+            while (index < pattern.length
+                    && pattern[index] == text[windowStart + index]) {
+                index++;
+            }
+            if (index >= pattern.length) {
+                index = criticalPosition;
+                while (index > memory
+                        && pattern[index] == text[windowStart + index]) {
+                    index--;
+                }
+                if (index <= memory) {
+                    consumer.accept(firstSymbolIndex + windowStart - from);
+                }
+                windowStart += period;
+                memory = pattern.length - period - 1;
+            } else {
+                windowStart += index - criticalPosition;
+                memory = -1;
+            }
+        }
+    }
+
+    private void searchNonPeriodic(char[] text, int from, int to,
+                                   long firstSymbolIndex,
+                                   LongConsumer consumer) {
+        int windowStart = from;
+        while (windowStart <= to - pattern.length) {
+            int index = criticalPosition + 1;
+            while (index < pattern.length
+                    && pattern[index] == text[windowStart + index]) {
+                index++;
+            }
+            if (index >= pattern.length) {
+                index = criticalPosition;
+                while (index >= 0
+                        && pattern[index] == text[windowStart + index]) {
+                    index--;
+                }
+                if (index < 0) {
+                    consumer.accept(firstSymbolIndex + windowStart - from);
+                }
+                windowStart += period;
+            } else {
+                windowStart += index - criticalPosition;
+            }
+        }
+    }
+}
+
+class ParallelPatternsFinder {
+    private static final long CHUNK_SIZE = 1L << 24;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private FileChannel channel;
+    private long textStart;
+    private long textEnd;
+    private KmpAutomaton automaton;
+    private ForkJoinPool pool;
+
+    public ParallelPatternsFinder(FileChannel channel, long textStart,
+                                  long textEnd, KmpAutomaton automaton,
+                                  ForkJoinPool pool) {
+        this.channel = channel;
+        this.textStart = textStart;
+        this.textEnd = textEnd;
+        this.automaton = automaton;
+        this.pool = pool;
+    }
+
+    private void checkPatternSize() {
+        if (automaton.getPatternLength() == 0) {
+            throw new IllegalArgumentException("Pattern size is 0.");
+        }
+    }
+
+    public void kMPAlgorithm(LongConsumer consumer) {
+        checkPatternSize();
+        long textSize = textEnd - textStart;
+        long chunksNumber = (textSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int batchSize = pool.getParallelism() * 2;
+        List<ForkJoinTask<PositionsBuffer>> batch = new ArrayList<>(batchSize);
+        for (long firstChunk = 0; firstChunk < chunksNumber;
+             firstChunk += batchSize) {
+            long lastChunk = Math.min(firstChunk + batchSize, chunksNumber);
+            for (long chunk = firstChunk; chunk < lastChunk; chunk++) {
+                long chunkStart = chunk * CHUNK_SIZE;
+                long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, textSize);
+                batch.add(pool.submit(new ChunkSearch(chunkStart, chunkEnd)));
+            }
+            for (ForkJoinTask<PositionsBuffer> chunkSearch : batch) {
+                chunkSearch.join().forEach(consumer);
+            }
+            batch.clear();
+        }
+    }
+
+    private class ChunkSearch extends RecursiveTask<PositionsBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        private long chunkStart;
+        private long chunkEnd;
+
+        ChunkSearch(long chunkStart, long chunkEnd) {
+            this.chunkStart = chunkStart;
+            this.chunkEnd = chunkEnd;
+        }
+
+        @Override
+        protected PositionsBuffer compute() {
+            long overlapStart = Math.max(0,
+                    chunkStart - automaton.getPatternLength() + 1);
+            int mappedSize = (int) (chunkEnd - overlapStart);
+            MappedByteBuffer mappedChunk;
+            try {
+                mappedChunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        textStart + overlapStart, mappedSize);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            PositionsBuffer positions = new PositionsBuffer();
+            char[] buffer = new char[BUFFER_SIZE];
+            int numberOfMatchingSymbols = 0;
+            for (int bufferStart = 0; bufferStart < mappedSize;
+                 bufferStart += BUFFER_SIZE) {
+                int read = Math.min(BUFFER_SIZE, mappedSize - bufferStart);
+                for (int index = 0; index < read; index++) {
+                    buffer[index] =
+                            (char) (mappedChunk.get(bufferStart + index) & 0xFF);
+                }
+                numberOfMatchingSymbols = automaton.scan(
+                        numberOfMatchingSymbols, buffer, 0, read,
+                        overlapStart + bufferStart, positions::add);
+            }
+            return positions;
+        }
+    }
+}
+
+class PositionsBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public void add(long position) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        positions[size++] = position;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        for (int index = 0; index < size; index++) {
+            consumer.accept(positions[index]);
+        }
+    }
+}
+
+class KmpAutomaton implements SearchEngine {
+    private static final int ALPHABET_SIZE = 256;
+    private static final int ALPHABET_BITS = 8;
+    private char[] pattern;
+    private int[] patternPrefixFunctions;
+    private int[] transitions;
+
+    public KmpAutomaton(char[] pattern) {
+        this.pattern = pattern;
+        patternPrefixFunctions = new int[pattern.length];
+        computePrefixFunctions();
+    }
+
+    public KmpAutomaton(char[] pattern, long transitionsMemoryBudget) {
+        this(pattern);
+        if (isByteAlphabet() && transitionsMemorySize()
+                <= transitionsMemoryBudget) {
+            computeTransitions();
+        }
+    }
+
+    private boolean isByteAlphabet() {
+        for (char symbol : pattern) {
+            if (symbol >= ALPHABET_SIZE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long transitionsMemorySize() {
+        return (pattern.length + 1L) * ALPHABET_SIZE * Integer.BYTES;
+    }
+
+    private void computeTransitions() {
+        transitions = new int[(pattern.length + 1) * ALPHABET_SIZE];
+        for (int state = 0; state <= pattern.length; state++) {
+            int stateOffset = state << ALPHABET_BITS;
+            int fallbackOffset = 0;
+            if (state > 0) {
+                fallbackOffset = patternPrefixFunctions[state - 1]
+                        << ALPHABET_BITS;
+            }
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                if (state < pattern.length && symbol == pattern[state]) {
+                    transitions[stateOffset + symbol] = state + 1;
+                } else if (state > 0) {
+                    transitions[stateOffset + symbol] =
+                            transitions[fallbackOffset + symbol];
+                }
+            }
+        }
+    }
+
+    public char[] getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public int getPatternLength() {
+        return pattern.length;
+    }
+
+    @Override
+    public void search(char[] text, int from, int to,
+                       long firstSymbolIndex, LongConsumer consumer) {
+        scan(0, text, from, to, firstSymbolIndex, consumer);
+    }
+
+    private void computePrefixFunctions() {
+        int numberOfMatchingSymbols = 0;
+        for (int symbolIndex = 1; symbolIndex < pattern.length; symbolIndex++) {
+            char nextElement = pattern[symbolIndex];
+            while (numberOfMatchingSymbols > 0
+                    && nextElement != pattern[numberOfMatchingSymbols]) {
+                numberOfMatchingSymbols =
+                        patternPrefixFunctions[numberOfMatchingSymbols - 1];
+            }
+            if (nextElement == pattern[numberOfMatchingSymbols]) {
+                numberOfMatchingSymbols++;
+            }
+            patternPrefixFunctions[symbolIndex] = numberOfMatchingSymbols;
+        }
+    }
+
+    public int scan(int numberOfMatchingSymbols, char[] text, int from,
+                    int to, long firstSymbolIndex, LongConsumer consumer) {
+        if (transitions != null) {
+            return scanCompiled(numberOfMatchingSymbols, text, from, to,
+                    firstSymbolIndex, consumer);
+        }
+        int patternLength = pattern.length;
+        long positionShift = firstSymbolIndex - from - patternLength + 1;
+        for (int symbolIndex = from; symbolIndex < to; symbolIndex++) {
+            char nextElement = text[symbolIndex];
+            while (numberOfMatchingSymbols == patternLength
+                    || (numberOfMatchingSymbols > 0
+                    && nextElement != pattern[numberOfMatchingSymbols])) {
+                numberOfMatchingSymbols =
+                        patternPrefixFunctions[numberOfMatchingSymbols - 1];
+            }
+            if (nextElement == pattern[numberOfMatchingSymbols]) {
+                numberOfMatchingSymbols++;
+            }
+            if (numberOfMatchingSymbols == patternLength) {
+                consumer.accept(positionShift + symbolIndex);
+            }
+        }
+        return numberOfMatchingSymbols;
+    }
+
+    private int scanCompiled(int state, char[] text, int from, int to,
+                             long firstSymbolIndex, LongConsumer consumer) {
+        int patternLength = pattern.length;
+        long positionShift = firstSymbolIndex - from - patternLength + 1;
+        for (int symbolIndex = from; symbolIndex < to; symbolIndex++) {
+            char nextElement = text[symbolIndex];
+            if (nextElement < ALPHABET_SIZE) {
+                state = transitions[(state << ALPHABET_BITS) | nextElement];
+            } else {
+                state = 0;
+            }
+            if (state == patternLength) {
+                consumer.accept(positionShift + symbolIndex);
+            }
+        }
+        return state;
+    }
+}
+
+interface ApproximateMatchConsumer {
+    void accept(long endPosition, int errors);
+}
+
+class ApproximatePatternsFinder {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ABSENT_SYMBOL_SLOT = 0;
+    private TextSource source;
+    private char[] pattern;
+    private int maxErrors;
+    private int wordsNumber;
+    private long lastBit;
+    private int[] symbolSlots = new int[Character.MAX_VALUE + 1];
+    private long[] symbolMasks;
+
+    public ApproximatePatternsFinder(TextSource source, char[] pattern,
+                                     int maxErrors) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Pattern size is 0.");
+        }
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("Errors number is negative.");
+        }
+        this.source = source;
+        this.pattern = pattern;
+        this.maxErrors = maxErrors;
+        wordsNumber = (pattern.length + Long.SIZE - 1) / Long.SIZE;
+        lastBit = 1L << ((pattern.length - 1) % Long.SIZE);
+        computeSymbolMasks();
+    }
+
+    private void computeSymbolMasks() {
+        int slotsNumber = 1;
+        for (char symbol : pattern) {
+            if (symbolSlots[symbol] == ABSENT_SYMBOL_SLOT) {
+                symbolSlots[symbol] = slotsNumber++;
+            }
+        }
+        symbolMasks = new long[slotsNumber * wordsNumber];
+        for (int index = 0; index < pattern.length; index++) {
+            int maskOffset = symbolSlots[pattern[index]] * wordsNumber;
+            symbolMasks[maskOffset + index / Long.SIZE] |=
+                    1L << (index % Long.SIZE);
+        }
+    }
+
+    public void mismatchesAlgorithm(ApproximateMatchConsumer consumer) {
+        if (wordsNumber == 1) {
+            mismatchesInWord(consumer);
+        } else {
+            mismatchesInBlocks(consumer);
+        }
+    }
+
+    private void mismatchesInWord(ApproximateMatchConsumer consumer) {
+        long[] states = new long[maxErrors + 1];
+        char[] buffer = new char[BUFFER_SIZE];
+        long symbolsNumber = 0;
+        int read;
+        do {
+            read = source.nextChars(buffer, 0, BUFFER_SIZE);
+            for (int bufferIndex = 0; bufferIndex < read; bufferIndex++) {
+                long mask = symbolMasks[symbolSlots[buffer[bufferIndex]]];
+                for (int errors = maxErrors; errors > 0; errors--) {
+                    states[errors] = (((states[errors] << 1) | 1) & mask)
+                            | ((states[errors - 1] << 1) | 1);
+                }
+                states[0] = ((states[0] << 1) | 1) & mask;
+                reportBestState(consumer, states,
+                        symbolsNumber + bufferIndex);
+            }
+            symbolsNumber += read;
+        } while (read == BUFFER_SIZE);
+    }
+
+    private void reportBestState(ApproximateMatchConsumer consumer,
+                                 long[] states, long endPosition) {
+        for (int errors = 0; errors <= maxErrors; errors++) {
+            if ((states[errors] & lastBit) != 0) {
+                consumer.accept(endPosition, errors);
+                return;
+            }
+        }
+    }
+
+    private void mismatchesInBlocks(ApproximateMatchConsumer consumer) {
+        long[] states = new long[(maxErrors + 1) * wordsNumber];
+        int lastWord = wordsNumber - 1;
+        char[] buffer = new char[BUFFER_SIZE];
+        long symbolsNumber = 0;
+        int read;
+        do {
+            read = source.nextChars(buffer, 0, BUFFER_SIZE);
+            for (int bufferIndex = 0; bufferIndex < read; bufferIndex++) {
+                int maskOffset = symbolSlots[buffer[bufferIndex]] * wordsNumber;
+                for (int errors = maxErrors; errors >= 0; errors--) {
+                    int stateOffset = errors * wordsNumber;
+                    for (int word = lastWord; word >= 0; word--) {
+                        long state = shiftedWord(states, stateOffset, word)
+                                & symbolMasks[maskOffset + word];
+                        if (errors > 0) {
+                            state |= shiftedWord(states,
+                                    stateOffset - wordsNumber, word);
+                        }
+                        states[stateOffset + word] = state;
+                    }
+                }
+                for (int errors = 0; errors <= maxErrors; errors++) {
+                    if ((states[errors * wordsNumber + lastWord]
+                            & lastBit) != 0) {
+                        consumer.accept(symbolsNumber + bufferIndex, errors);
+                        break;
+                    }
+                }
+            }
+            symbolsNumber += read;
+        } while (read == BUFFER_SIZE);
+    }
+
+    private long shiftedWord(long[] states, int stateOffset, int word) {
+        long carry = word == 0
+                ? 1 : states[stateOffset + word - 1] >>> (Long.SIZE - 1);
+        return (states[stateOffset + word] << 1) | carry;
+    }
+
+    public void editsAlgorithm(ApproximateMatchConsumer consumer) {
+        if (wordsNumber == 1) {
+            editsInWord(consumer);
+        } else {
+            editsInBlocks(consumer);
+        }
+    }
+
+    private void editsInWord(ApproximateMatchConsumer consumer) {
+        long positiveVertical = -1L;
+        long negativeVertical = 0;
+        int score = pattern.length;
+        char[] buffer = new char[BUFFER_SIZE];
+        long symbolsNumber = 0;
+        int read;
+        do {
+            read = source.nextChars(buffer, 0, BUFFER_SIZE);
+            for (int bufferIndex = 0; bufferIndex < read; bufferIndex++) {
+                long equal = symbolMasks[symbolSlots[buffer[bufferIndex]]];
+                long verticalChange = equal | negativeVertical;
+                long horizontalChange = (((equal & positiveVertical)
+                        + positiveVertical) ^ positiveVertical) | equal;
+                long positiveHorizontal = negativeVertical
+                        | ~(horizontalChange | positiveVertical);
+                long negativeHorizontal = positiveVertical & horizontalChange;
+                if ((positiveHorizontal & lastBit) != 0) {
+                    score++;
+                } else if ((negativeHorizontal & lastBit) != 0) {
+                    score--;
+                }
+                positiveHorizontal <<= 1;
+                negativeHorizontal <<= 1;
+                positiveVertical = negativeHorizontal
+                        | ~(verticalChange | positiveHorizontal);
+                negativeVertical = positiveHorizontal & verticalChange;
+                if (score <= maxErrors) {
+                    consumer.accept(symbolsNumber + bufferIndex, score);
+                }
+            }
+            symbolsNumber += read;
+        } while (read == BUFFER_SIZE);
+    }
+
+    private void editsInBlocks(ApproximateMatchConsumer consumer) {
+        long[] positiveVertical = new long[wordsNumber];
+        long[] negativeVertical = new long[wordsNumber];
+        Arrays.fill(positiveVertical, -1L);
+        long highBit = 1L << (Long.SIZE - 1);
+        int lastWord = wordsNumber - 1;
+        int score = pattern.length;
+        char[] buffer = new char[BUFFER_SIZE];
+        long symbolsNumber = 0;
+        int read;
+        do {
+            read = source.nextChars(buffer, 0, BUFFER_SIZE);
+            for (int bufferIndex = 0; bufferIndex < read; bufferIndex++) {
+                int maskOffset = symbolSlots[buffer[bufferIndex]] * wordsNumber;
+                int horizontalIn = 0;
+                for (int word = 0; word < wordsNumber; word++) {
+                    long outputBit = word == lastWord ? lastBit : highBit;
+                    long equal = symbolMasks[maskOffset + word];
+                    long verticalChange = equal | negativeVertical[word];
+                    if (horizontalIn < 0) {
+                        equal |= 1;
+                    }
+                    long horizontalChange = (((equal & positiveVertical[word])
+                            + positiveVertical[word]) ^ positiveVertical[word])
+                            | equal;
+                    long positiveHorizontal = negativeVertical[word]
+                            | ~(horizontalChange | positiveVertical[word]);
+                    long negativeHorizontal =
+                            positiveVertical[word] & horizontalChange;
+                    int horizontalOut = 0;
+                    if ((positiveHorizontal & outputBit) != 0) {
+                        horizontalOut = 1;
+                    } else if ((negativeHorizontal & outputBit) != 0) {
+                        horizontalOut = -1;
+                    }
+                    positiveHorizontal <<= 1;
+                    negativeHorizontal <<= 1;
+                    if (horizontalIn < 0) {
+                        negativeHorizontal |= 1;
+                    } else if (horizontalIn > 0) {
+                        positiveHorizontal |= 1;
+                    }
+                    positiveVertical[word] = negativeHorizontal
+                            | ~(verticalChange | positiveHorizontal);
+                    negativeVertical[word] = positiveHorizontal & verticalChange;
+                    horizontalIn = horizontalOut;
+                }
+                score += horizontalIn;
+                if (score <= maxErrors) {
+                    consumer.accept(symbolsNumber + bufferIndex, score);
+                }
+            }
+            symbolsNumber += read;
+        } while (read == BUFFER_SIZE);
+    }
+}
+
+interface MatchConsumer {
+    void accept(int patternIndex, long position);
+}
+
+class MultiPatternsFinder {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private TextSource source;
+    private char[][] patterns;
+    private TransitionTable transitions;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private char[] nodeSymbols;
+    private int[] failureLinks;
+    private int[] dictionaryLinks;
+    private int[] nodePatterns;
+    private int[] samePatterns;
+    private int nodesNumber;
+
+    public MultiPatternsFinder(TextSource source, char[][] patterns) {
+        this.source = source;
+        this.patterns = patterns;
+        checkPatternSizes();
+        buildTrie();
+        buildLinks();
+    }
+
+    private void checkPatternSizes() {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("Patterns number is 0.");
+        }
+        for (char[] pattern : patterns) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("Pattern size is 0.");
+            }
+        }
+    }
+
+    private void buildTrie() {
+        int maxNodesNumber = 1;
+        for (char[] pattern : patterns) {
+            maxNodesNumber += pattern.length;
+        }
+        transitions = new TransitionTable(maxNodesNumber);
+        firstChildren = new int[maxNodesNumber];
+        nextSiblings = new int[maxNodesNumber];
+        nodeSymbols = new char[maxNodesNumber];
+        nodePatterns = new int[maxNodesNumber];
+        Arrays.fill(firstChildren, NONE);
+        Arrays.fill(nodePatterns, NONE);
+        samePatterns = new int[patterns.length];
+        nodesNumber = 1;
+        for (int patternIndex = 0; patternIndex < patterns.length;
+             patternIndex++) {
+            int node = ROOT;
+            for (char symbol : patterns[patternIndex]) {
+                int child = transitions.get(node, symbol);
+                if (child == NONE) {
+                    child = addChild(node, symbol);
+                }
+                node = child;
+            }
+            samePatterns[patternIndex] = nodePatterns[node];
+            nodePatterns[node] = patternIndex;
+        }
+    }
+
+    private int addChild(int node, char symbol) {
+        int child = nodesNumber++;
+        nodeSymbols[child] = symbol;
+        nextSiblings[child] = firstChildren[node];
+        firstChildren[node] = child;
+        transitions.put(node, symbol, child);
+        return child;
+    }
+
+    private void buildLinks() {
+        failureLinks = new int[nodesNumber];
+        dictionaryLinks = new int[nodesNumber];
+        dictionaryLinks[ROOT] = NONE;
+        int[] queue = new int[nodesNumber];
+        int queueHead = 0;
+        int queueTail = 0;
+        queue[queueTail++] = ROOT;
+        while (queueHead < queueTail) {
+            int node = queue[queueHead++];
+            for (int child = firstChildren[node]; child != NONE;
+                 child = nextSiblings[child]) {
+                int failureLink = ROOT;
+                if (node != ROOT) {
+                    failureLink = nextNode(failureLinks[node],
+                            nodeSymbols[child]);
+                }
+                failureLinks[child] = failureLink;
+                if (nodePatterns[failureLink] != NONE) {
+                    dictionaryLinks[child] = failureLink;
+                } else {
+                    dictionaryLinks[child] = dictionaryLinks[failureLink];
+                }
+                queue[queueTail++] = child;
+            }
+        }
+    }
+
+    private int nextNode(int node, char symbol) {
+        int child = transitions.get(node, symbol);
+        while (child == NONE && node != ROOT) {
+            node = failureLinks[node];
+            child = transitions.get(node, symbol);
+        }
+        return child == NONE ? ROOT : child;
+    }
+
+    public void ahoCorasickAlgorithm(MatchConsumer consumer) {
+        char[] buffer = new char[BUFFER_SIZE];
+        int node = ROOT;
+        long symbolsNumber = 0;
+        int read;
+        do {
+            read = source.nextChars(buffer, 0, BUFFER_SIZE);
+            for (int bufferIndex = 0; bufferIndex < read; bufferIndex++) {
+                node = nextNode(node, buffer[bufferIndex]);
+                int matchedNode = nodePatterns[node] != NONE
+                        ? node : dictionaryLinks[node];
+                while (matchedNode != NONE) {
+                    reportPatterns(consumer, matchedNode,
+                            symbolsNumber + bufferIndex);
+                    matchedNode = dictionaryLinks[matchedNode];
+                }
+            }
+            symbolsNumber += read;
+        } while (read == BUFFER_SIZE);
+    }
+
+    private void reportPatterns(MatchConsumer consumer,
+                                int node, long symbolIndex) {
+        for (int patternIndex = nodePatterns[node]; patternIndex != NONE;
+             patternIndex = samePatterns[patternIndex]) {
+            long position = symbolIndex - patterns[patternIndex].length + 1;
+            consumer.accept(patternIndex, position);
+        }
+    }
+}
+
+class TransitionTable {
+    private static final long EMPTY = -1;
+    private static final int NONE = -1;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+
+    public TransitionTable(int expectedSize) {
+        int capacity = 2;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private long key(int node, char symbol) {
+        return ((long) node << Character.SIZE) | symbol;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    public int get(int node, char symbol) {
+        long key = key(node, symbol);
+        for (int slot = slot(key); keys[slot] != EMPTY;
+             slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return NONE;
+    }
+
+    public void put(int node, char symbol, int value) {
+        long key = key(node, symbol);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+}
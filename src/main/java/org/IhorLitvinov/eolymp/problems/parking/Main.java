@@ -4,9 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.IntPredicate;
 
 public class Main {
+    private static final String BOTTLENECK_MODE = "--bottleneck";
+    private String mode = "";
     private char[][] parkingMap;
     private Scanner scanner;
     private PrintWriter printWriter;
@@ -19,6 +23,10 @@ public class Main {
         this.printWriter = printWriter;
     }
 
+    public void useMode(String mode) {
+        this.mode = mode;
+    }
+
     private void scanData() {
         rowsNumber = scanner.nextInt();
         columnsNumber = scanner.nextInt();
@@ -53,12 +61,17 @@ public class Main {
     private void solveProblem() {
         if (parkingMapParser.carsNumber() == 0) {
             printWriter.println(0);
+        } else if (mode.equals(BOTTLENECK_MODE)) {
+            BottleneckMatcher matcher =
+                    new BottleneckMatcher(parkingMapParser.getSortedGraph());
+            printWriter.println(matcher.minMaxDistance());
         } else {
             IntPredicate carsCanFindPlace = maxDistance -> {
                 ParkingGraph parkingGraph =
                         parkingMapParser.getGraph(maxDistance);
-                int maxFlow = MaxFlowFinder.maxFlow(parkingGraph);
-                return maxFlow == parkingMapParser.carsNumber();
+                int maxMatching =
+                        HopcroftKarpMatcher.maxMatching(parkingGraph);
+                return maxMatching == parkingMapParser.carsNumber();
             };
             int maxPossibleDistance =
                     parkingMapParser.getMaxPossibleDistance();
@@ -75,6 +88,9 @@ public class Main {
         Scanner scanner = new Scanner(new File("input.txt"));
         PrintWriter printWriter = new PrintWriter(new File("output.txt"));
         Main main = new Main(scanner, printWriter);
+        if (args.length > 0) {
+            main.useMode(args[0]);
+        }
         while (scanner.hasNext()) {
             main.scanData();
             main.solveProblem();
@@ -83,164 +99,596 @@ public class Main {
     }
 }
 
-interface Flowable {
-    int getSourceNode();
-
-    int getDestinationNode();
+class HopcroftKarpMatcher {
+    private static final int UNMATCHED = -1;
+    private static final int UNREACHED = -1;
+
+    public static int maxMatching(ParkingGraph graph) {
+        int[] placeOfCar = new int[graph.getCarsNumber()];
+        int[] carOfPlace = new int[graph.getPlacesNumber()];
+        Arrays.fill(placeOfCar, UNMATCHED);
+        Arrays.fill(carOfPlace, UNMATCHED);
+        return maxMatching(graph, placeOfCar, carOfPlace);
+    }
+
+    public static int maxMatching(ParkingGraph graph, int[] placeOfCar,
+                                  int[] carOfPlace) {
+        int carsNumber = graph.getCarsNumber();
+        int[] layers = new int[carsNumber];
+        int[] queue = new int[carsNumber];
+        int[] currentEdges = new int[carsNumber];
+        int[] path = new int[carsNumber];
+        int matching = 0;
+        for (int car = 0; car < carsNumber; car++) {
+            if (placeOfCar[car] != UNMATCHED) {
+                matching++;
+            }
+        }
+        int freeLayer =
+                buildLayers(graph, placeOfCar, carOfPlace, layers, queue);
+        while (freeLayer != UNREACHED) {
+            for (int car = 0; car < carsNumber; car++) {
+                currentEdges[car] = graph.firstEdge(car);
+            }
+            for (int car = 0; car < carsNumber; car++) {
+                if (placeOfCar[car] == UNMATCHED
+                        && augment(graph, car, placeOfCar, carOfPlace,
+                        layers, freeLayer, currentEdges, path)) {
+                    matching++;
+                }
+            }
+            freeLayer =
+                    buildLayers(graph, placeOfCar, carOfPlace, layers, queue);
+        }
+        return matching;
+    }
+
+    private static int buildLayers(ParkingGraph graph, int[] placeOfCar,
+                                   int[] carOfPlace, int[] layers,
+                                   int[] queue) {
+        int head = 0;
+        int tail = 0;
+        for (int car = 0; car < layers.length; car++) {
+            if (placeOfCar[car] == UNMATCHED) {
+                layers[car] = 0;
+                queue[tail++] = car;
+            } else {
+                layers[car] = UNREACHED;
+            }
+        }
+        int freeLayer = UNREACHED;
+        while (head < tail) {
+            int car = queue[head++];
+            if (freeLayer != UNREACHED && layers[car] >= freeLayer) {
+                break;
+            }
+            for (int edge = graph.firstEdge(car);
+                 edge < graph.lastEdge(car); edge++) {
+                int nextCar = carOfPlace[graph.getPlace(edge)];
+                if (nextCar == UNMATCHED) {
+                    freeLayer = layers[car];
+                } else if (freeLayer == UNREACHED
+                        && layers[nextCar] == UNREACHED) {
+                    layers[nextCar] = layers[car] + 1;
+                    queue[tail++] = nextCar;
+                }
+            }
+        }
+        return freeLayer;
+    }
+
+    private static boolean augment(ParkingGraph graph, int startCar,
+                                   int[] placeOfCar, int[] carOfPlace,
+                                   int[] layers, int freeLayer,
+                                   int[] currentEdges, int[] path) {
+        int pathLength = 0;
+        path[pathLength++] = startCar;
+        while (pathLength > 0) {
+            int car = path[pathLength - 1];
+            if (currentEdges[car] == graph.lastEdge(car)) {
+                layers[car] = UNREACHED;
+                pathLength--;
+                if (pathLength > 0) {
+                    currentEdges[path[pathLength - 1]]++;
+                }
+                continue;
+            }
+            int nextCar = carOfPlace[graph.getPlace(currentEdges[car])];
+            if (nextCar == UNMATCHED) {
+                if (layers[car] == freeLayer) {
+                    for (int pathIndex = 0; pathIndex < pathLength;
+                         pathIndex++) {
+                        int pathCar = path[pathIndex];
+                        int place = graph.getPlace(currentEdges[pathCar]);
+                        placeOfCar[pathCar] = place;
+                        carOfPlace[place] = pathCar;
+                    }
+                    return true;
+                }
+                currentEdges[car]++;
+            } else if (layers[nextCar] == layers[car] + 1) {
+                path[pathLength++] = nextCar;
+            } else {
+                currentEdges[car]++;
+            }
+        }
+        return false;
+    }
 }
 
-interface Marked {
-    void mark(int nodeIndex, int mark);
+class BottleneckMatcher {
+    private static final int UNMATCHED = -1;
+    private ParkingGraph sortedGraph;
+    private ParkingGraph activeGraph;
+    private int[] placeOfCar;
+    private int[] carOfPlace;
+    private boolean[] reachedCars;
+    private boolean[] reachedPlaces;
+    private int[] queue;
+
+    public BottleneckMatcher(ParkingGraph sortedGraph) {
+        this.sortedGraph = sortedGraph;
+        int carsNumber = sortedGraph.getCarsNumber();
+        int placesNumber = sortedGraph.getPlacesNumber();
+        activeGraph = sortedGraph.thresholdView(0);
+        placeOfCar = new int[carsNumber];
+        carOfPlace = new int[placesNumber];
+        Arrays.fill(placeOfCar, UNMATCHED);
+        Arrays.fill(carOfPlace, UNMATCHED);
+        reachedCars = new boolean[carsNumber];
+        reachedPlaces = new boolean[placesNumber];
+        queue = new int[carsNumber];
+    }
+
+    public int minMaxDistance() {
+        int carsNumber = sortedGraph.getCarsNumber();
+        int[] edgesByDistance = edgesByDistance();
+        int[] edgeCars = edgeCars();
+        rebuildForest();
+        int edgeIndex = 0;
+        while (edgeIndex < edgesByDistance.length) {
+            int distance = sortedGraph.getDistance(edgesByDistance[edgeIndex]);
+            boolean pathFound = false;
+            while (edgeIndex < edgesByDistance.length && sortedGraph
+                    .getDistance(edgesByDistance[edgeIndex]) == distance) {
+                int edge = edgesByDistance[edgeIndex++];
+                int car = edgeCars[edge];
+                activeGraph.extendEdges(car);
+                if (!pathFound && reachedCars[car]) {
+                    pathFound = reachPlace(sortedGraph.getPlace(edge));
+                }
+            }
+            if (pathFound) {
+                int matching = HopcroftKarpMatcher.maxMatching(activeGraph,
+                        placeOfCar, carOfPlace);
+                if (matching == carsNumber) {
+                    return distance;
+                }
+                rebuildForest();
+            }
+        }
+        return -1;
+    }
+
+    private int[] edgesByDistance() {
+        int edgesNumber = sortedGraph.lastEdge(sortedGraph.getCarsNumber() - 1);
+        int maxDistance = 0;
+        for (int edge = 0; edge < edgesNumber; edge++) {
+            maxDistance = Math.max(maxDistance, sortedGraph.getDistance(edge));
+        }
+        int[] distanceStarts = new int[maxDistance + 2];
+        for (int edge = 0; edge < edgesNumber; edge++) {
+            distanceStarts[sortedGraph.getDistance(edge) + 1]++;
+        }
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            distanceStarts[distance + 1] += distanceStarts[distance];
+        }
+        int[] edges = new int[edgesNumber];
+        for (int edge = 0; edge < edgesNumber; edge++) {
+            edges[distanceStarts[sortedGraph.getDistance(edge)]++] = edge;
+        }
+        return edges;
+    }
+
+    private int[] edgeCars() {
+        int carsNumber = sortedGraph.getCarsNumber();
+        int[] edgeCars = new int[sortedGraph.lastEdge(carsNumber - 1)];
+        for (int car = 0; car < carsNumber; car++) {
+            for (int edge = sortedGraph.firstEdge(car);
+                 edge < sortedGraph.lastEdge(car); edge++) {
+                edgeCars[edge] = car;
+            }
+        }
+        return edgeCars;
+    }
 
-    int getMark(int nodeIndex);
+    private void rebuildForest() {
+        Arrays.fill(reachedCars, false);
+        Arrays.fill(reachedPlaces, false);
+        int tail = 0;
+        for (int car = 0; car < placeOfCar.length; car++) {
+            if (placeOfCar[car] == UNMATCHED) {
+                reachedCars[car] = true;
+                queue[tail++] = car;
+            }
+        }
+        expandForest(0, tail);
+    }
 
-    void cleanMarks();
+    private boolean reachPlace(int place) {
+        if (reachedPlaces[place]) {
+            return false;
+        }
+        reachedPlaces[place] = true;
+        int car = carOfPlace[place];
+        if (car == UNMATCHED) {
+            return true;
+        }
+        reachedCars[car] = true;
+        queue[0] = car;
+        return expandForest(0, 1);
+    }
+
+    private boolean expandForest(int head, int tail) {
+        while (head < tail) {
+            int car = queue[head++];
+            for (int edge = activeGraph.firstEdge(car);
+                 edge < activeGraph.lastEdge(car); edge++) {
+                int place = activeGraph.getPlace(edge);
+                if (reachedPlaces[place]) {
+                    continue;
+                }
+                reachedPlaces[place] = true;
+                int nextCar = carOfPlace[place];
+                if (nextCar == UNMATCHED) {
+                    return true;
+                }
+                reachedCars[nextCar] = true;
+                queue[tail++] = nextCar;
+            }
+        }
+        return false;
+    }
 }
 
-interface MatrixGraph {
-    int[][] adjacencyMatrix();
+class ParkingGraph {
+    private int carsNumber;
+    private int placesNumber;
+    private int[] edgesStarts;
+    private int[] edgesEnds;
+    private int[] places;
+    private int[] distances;
+
+    public ParkingGraph(int carsNumber, int placesNumber, int[] edgesStarts,
+                        int[] edgesEnds, int[] places, int[] distances) {
+        this.carsNumber = carsNumber;
+        this.placesNumber = placesNumber;
+        this.edgesStarts = edgesStarts;
+        this.edgesEnds = edgesEnds;
+        this.places = places;
+        this.distances = distances;
+    }
+
+    public ParkingGraph thresholdView(int maxDistance) {
+        int[] viewEnds = new int[carsNumber];
+        for (int car = 0; car < carsNumber; car++) {
+            int low = edgesStarts[car];
+            int high = edgesEnds[car];
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (distances[middle] <= maxDistance) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            viewEnds[car] = low;
+        }
+        return new ParkingGraph(carsNumber, placesNumber, edgesStarts,
+                viewEnds, places, distances);
+    }
+
+    public void extendEdges(int car) {
+        edgesEnds[car]++;
+    }
+
+    public int getCarsNumber() {
+        return carsNumber;
+    }
+
+    public int getPlacesNumber() {
+        return placesNumber;
+    }
+
+    public int firstEdge(int car) {
+        return edgesStarts[car];
+    }
+
+    public int lastEdge(int car) {
+        return edgesEnds[car];
+    }
 
-    int getNodesNumber();
+    public int getPlace(int edge) {
+        return places[edge];
+    }
+
+    public int getDistance(int edge) {
+        return distances[edge];
+    }
 }
 
-class MaxFlowFinder {
-    public static <T extends MatrixGraph
-            & Marked & Flowable> int maxFlow(T graph) {
-        int maxFlow = 0;
-        graph.cleanMarks();
-        while (hasWay(graph)) {
-            int minCapacity = minCapacity(graph);
-            maxFlow += minCapacity;
-            reduceCapacity(graph, minCapacity);
-            graph.cleanMarks();
-        }
-        return maxFlow;
-    }
-
-    private static <T extends MatrixGraph
-            & Marked & Flowable> int minCapacity(T graph) {
-        int[][] adjacencyMatrix = graph.adjacencyMatrix();
-        int currentNode = graph.getDestinationNode();
-        int parent = graph.getMark(currentNode) - 1;
-        int minCapacity = adjacencyMatrix[parent][currentNode];
-        currentNode = parent;
-        parent = graph.getMark(currentNode) - 1;
-        while (parent >= 0) {
-            int currentCapacity = adjacencyMatrix[parent][currentNode];
-            if (currentCapacity < minCapacity) {
-                minCapacity = currentCapacity;
+class GridDistanceFinder {
+    private static final char WALL_SYMBOL = 'X';
+    private static final int NOT_PLACE = -1;
+    private static final int TASKS_PER_THREAD = 4;
+    private int cellsNumber;
+    private boolean[] passableCells;
+    private int[] cellPlaces;
+    private int[] carCells;
+    private int placesNumber;
+    private int[] carLimits;
+    private boolean allCarsCanPark;
+    private int maxCarsInArea;
+    private int[] neighborOffsets;
+
+    public GridDistanceFinder(char[][] parkingMap, List<Integer> carPositions,
+                              List<Integer> parkingPositions) {
+        int rowsNumber = parkingMap.length;
+        int columnsNumber = parkingMap[0].length;
+        int paddedColumnsNumber = columnsNumber + 2;
+        cellsNumber = (rowsNumber + 2) * paddedColumnsNumber;
+        passableCells = new boolean[cellsNumber];
+        cellPlaces = new int[cellsNumber];
+        Arrays.fill(cellPlaces, NOT_PLACE);
+        placesNumber = parkingPositions.size();
+        for (int rowIndex = 0; rowIndex < rowsNumber; rowIndex++) {
+            for (int columnIndex = 0; columnIndex < columnsNumber;
+                 columnIndex++) {
+                passableCells[paddedCell(rowIndex, columnIndex,
+                        paddedColumnsNumber)] =
+                        parkingMap[rowIndex][columnIndex] != WALL_SYMBOL;
             }
-            currentNode = parent;
-            parent = graph.getMark(currentNode) - 1;
-        }
-        return minCapacity;
-    }
-
-    private static <T extends MatrixGraph & Marked
-            & Flowable> void reduceCapacity(T graph, int minCapacity) {
-        int[][] adjacencyMatrix = graph.adjacencyMatrix();
-        int currentNode = graph.getDestinationNode();
-        int parent = graph.getMark(currentNode) - 1;
-        while (parent >= 0) {
-            adjacencyMatrix[parent][currentNode] -= minCapacity;
-            adjacencyMatrix[currentNode][parent] += minCapacity;
-            currentNode = parent;
-            parent = graph.getMark(currentNode) - 1;
-        }
-    }
-
-    private static <T extends MatrixGraph
-            & Marked & Flowable> boolean hasWay(T graph) {
-        int source = graph.getSourceNode();
-        graph.mark(source, -1);
-        Queue<Integer> queue = new LinkedList<>();
-        queue.add(source);
-        while (!queue.isEmpty()) {
-            int currentNode = queue.poll();
-            int[] capacities = graph.adjacencyMatrix()[currentNode];
-            for (int neighborIndex = 0; neighborIndex < capacities.length;
-                 neighborIndex++) {
-                if (capacities[neighborIndex] > 0
-                        && graph.getMark(neighborIndex) == 0) {
-                    graph.mark(neighborIndex, currentNode + 1);
-                    if (neighborIndex == graph.getDestinationNode()) {
-                        return true;
-                    }
-                    queue.add(neighborIndex);
+        }
+        for (int placeIndex = 0; placeIndex < parkingPositions.size();
+             placeIndex++) {
+            int position = parkingPositions.get(placeIndex);
+            cellPlaces[paddedCell(position / columnsNumber,
+                    position % columnsNumber, paddedColumnsNumber)] =
+                    placeIndex;
+        }
+        carCells = new int[carPositions.size()];
+        for (int carNode = 0; carNode < carCells.length; carNode++) {
+            int position = carPositions.get(carNode);
+            carCells[carNode] = paddedCell(position / columnsNumber,
+                    position % columnsNumber, paddedColumnsNumber);
+        }
+        neighborOffsets = new int[]{
+                -paddedColumnsNumber, paddedColumnsNumber, -1, 1};
+        countCarsInAreas();
+    }
+
+    private void countCarsInAreas() {
+        int[] cellAreas = new int[cellsNumber];
+        int[] queue = new int[cellsNumber];
+        int areasNumber = 0;
+        for (int carCell : carCells) {
+            if (cellAreas[carCell] == 0) {
+                areasNumber++;
+                markArea(carCell, areasNumber, cellAreas, queue);
+            }
+        }
+        int[] areaCars = new int[areasNumber + 1];
+        int[] areaPlaces = new int[areasNumber + 1];
+        for (int carCell : carCells) {
+            areaCars[cellAreas[carCell]]++;
+        }
+        for (int cell = 0; cell < cellsNumber; cell++) {
+            if (cellPlaces[cell] != NOT_PLACE) {
+                areaPlaces[cellAreas[cell]]++;
+            }
+        }
+        allCarsCanPark = true;
+        for (int area = 1; area <= areasNumber; area++) {
+            if (areaCars[area] > areaPlaces[area]) {
+                allCarsCanPark = false;
+            }
+            maxCarsInArea = Math.max(maxCarsInArea, areaCars[area]);
+        }
+        carLimits = new int[carCells.length];
+        for (int carNode = 0; carNode < carCells.length; carNode++) {
+            carLimits[carNode] = areaCars[cellAreas[carCells[carNode]]];
+        }
+    }
+
+    private void markArea(int startCell, int area, int[] cellAreas,
+                          int[] queue) {
+        cellAreas[startCell] = area;
+        queue[0] = startCell;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int offset : neighborOffsets) {
+                int neighbor = cell + offset;
+                if (passableCells[neighbor] && cellAreas[neighbor] == 0) {
+                    cellAreas[neighbor] = area;
+                    queue[tail++] = neighbor;
                 }
             }
         }
-        return false;
     }
-}
 
-class ParkingGraph implements MatrixGraph, Marked, Flowable {
-    private int[][] adjacencyMatrix;
-    private int nodesNumber;
-    private int[] marks;
-    private int sourceNode;
-    private int destinationNode;
+    public boolean allCarsCanPark() {
+        return allCarsCanPark;
+    }
+
+    public int getMaxCarsInArea() {
+        return maxCarsInArea;
+    }
 
-    public ParkingGraph(int[][] adjacencyMatrix,
-                        int sourceNode, int destinationNode) {
-        this.adjacencyMatrix = adjacencyMatrix;
-        this.sourceNode = sourceNode;
-        this.destinationNode = destinationNode;
-        nodesNumber = adjacencyMatrix.length;
+    private static int paddedCell(int rowIndex, int columnIndex,
+                                  int paddedColumnsNumber) {
+        return (rowIndex + 1) * paddedColumnsNumber + columnIndex + 1;
     }
 
-    @Override
-    public int[][] adjacencyMatrix() {
-        return adjacencyMatrix;
+    public ParkingGraph findNearestPlaces(int placesLimit, int maxDistance) {
+        int carsNumber = carCells.length;
+        int[][] carPlaces = new int[carsNumber][];
+        int[][] carDistances = new int[carsNumber][];
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int carsPerTask = Math.max(1,
+                carsNumber / (pool.getParallelism() * TASKS_PER_THREAD));
+        pool.invoke(new DistancesSearch(0, carsNumber, carsPerTask,
+                placesLimit, maxDistance, carPlaces, carDistances));
+        int[] edgesStarts = new int[carsNumber + 1];
+        for (int carNode = 0; carNode < carsNumber; carNode++) {
+            edgesStarts[carNode + 1] =
+                    edgesStarts[carNode] + carPlaces[carNode].length;
+        }
+        int[] places = new int[edgesStarts[carsNumber]];
+        int[] distances = new int[edgesStarts[carsNumber]];
+        for (int carNode = 0; carNode < carsNumber; carNode++) {
+            System.arraycopy(carPlaces[carNode], 0, places,
+                    edgesStarts[carNode], carPlaces[carNode].length);
+            System.arraycopy(carDistances[carNode], 0, distances,
+                    edgesStarts[carNode], carDistances[carNode].length);
+        }
+        return new ParkingGraph(carsNumber, placesNumber, edgesStarts,
+                Arrays.copyOfRange(edgesStarts, 1, carsNumber + 1),
+                places, distances);
+    }
+
+    private void findNearestPlaces(int carNode, int placesLimit,
+                                   int maxDistance, EdgesBuffer edges,
+                                   int[] queue,
+                                   int[] visitedEpochs, int epoch) {
+        int carCell = carCells[carNode];
+        visitedEpochs[carCell] = epoch;
+        queue[0] = carCell;
+        int head = 0;
+        int tail = 1;
+        int distance = 0;
+        while (head < tail && edges.size() < placesLimit
+                && distance < maxDistance) {
+            int levelEnd = tail;
+            distance++;
+            while (head < levelEnd) {
+                int cell = queue[head++];
+                for (int offset : neighborOffsets) {
+                    int neighbor = cell + offset;
+                    if (!passableCells[neighbor]
+                            || visitedEpochs[neighbor] == epoch) {
+                        continue;
+                    }
+                    visitedEpochs[neighbor] = epoch;
+                    queue[tail++] = neighbor;
+                    int place = cellPlaces[neighbor];
+                    if (place != NOT_PLACE) {
+                        edges.add(place, distance);
+                    }
+                }
+            }
+        }
     }
 
-    @Override
-    public int getNodesNumber() {
-        return nodesNumber;
+    private class DistancesSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int firstCar;
+        private int lastCar;
+        private int carsPerTask;
+        private int placesLimit;
+        private int maxDistance;
+        private int[][] carPlaces;
+        private int[][] carDistances;
+
+        DistancesSearch(int firstCar, int lastCar, int carsPerTask,
+                        int placesLimit, int maxDistance, int[][] carPlaces,
+                        int[][] carDistances) {
+            this.firstCar = firstCar;
+            this.lastCar = lastCar;
+            this.carsPerTask = carsPerTask;
+            this.placesLimit = placesLimit;
+            this.maxDistance = maxDistance;
+            this.carPlaces = carPlaces;
+            this.carDistances = carDistances;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastCar - firstCar > carsPerTask) {
+                int middleCar = (firstCar + lastCar) >>> 1;
+                invokeAll(new DistancesSearch(firstCar, middleCar,
+                                carsPerTask, placesLimit, maxDistance,
+                                carPlaces, carDistances),
+                        new DistancesSearch(middleCar, lastCar,
+                                carsPerTask, placesLimit, maxDistance,
+                                carPlaces, carDistances));
+                return;
+            }
+            int[] queue = new int[cellsNumber];
+            int[] visitedEpochs = new int[cellsNumber];
+            EdgesBuffer edges = new EdgesBuffer();
+            for (int carNode = firstCar; carNode < lastCar; carNode++) {
+                edges.clear();
+                findNearestPlaces(carNode,
+                        Math.min(placesLimit, carLimits[carNode]),
+                        maxDistance, edges, queue, visitedEpochs,
+                        carNode - firstCar + 1);
+                saveEdges(carNode, edges);
+            }
+        }
+
+        private void saveEdges(int carNode, EdgesBuffer edges) {
+            carPlaces[carNode] = edges.copyPlaces();
+            carDistances[carNode] = edges.copyDistances();
+        }
     }
+}
 
-    @Override
-    public void mark(int nodeIndex, int mark) {
-        marks[nodeIndex] = mark;
+class EdgesBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+    private int[] places = new int[INITIAL_CAPACITY];
+    private int[] distances = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public void add(int place, int distance) {
+        if (size == places.length) {
+            places = Arrays.copyOf(places, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+        }
+        places[size] = place;
+        distances[size] = distance;
+        size++;
     }
 
-    @Override
-    public int getMark(int nodeIndex) {
-        return marks[nodeIndex];
+    public int size() {
+        return size;
     }
 
-    @Override
-    public void cleanMarks() {
-        marks = new int[nodesNumber];
+    public void clear() {
+        size = 0;
     }
 
-    @Override
-    public int getSourceNode() {
-        return sourceNode;
+    public int[] copyPlaces() {
+        return Arrays.copyOf(places, size);
     }
 
-    @Override
-    public int getDestinationNode() {
-        return destinationNode;
+    public int[] copyDistances() {
+        return Arrays.copyOf(distances, size);
     }
 }
 
 class ParkingMapParser {
+    private static final int PROBE_PLACES_LIMIT = 16;
+    private static final int PROBE_GROWTH = 4;
     private char[][] parkingMap;
-    private int mapSize;
-    private int columnsNumber;
     private int carsNumber;
-    private int placesNumber;
-    private int[][] adjacencyMatrix;
-    private int sourceNode;
-    private int destinationNode;
+    private ParkingGraph sortedGraph;
     private int maxPossibleDistance = 0;
 
     public ParkingMapParser(char[][] parkingMap) {
         this.parkingMap = parkingMap;
-        int rowsNumber = parkingMap.length;
-        columnsNumber = parkingMap[0].length;
-        mapSize = rowsNumber * columnsNumber;
         parseMap();
     }
 
@@ -248,28 +696,37 @@ class ParkingMapParser {
         List<Integer> carPositions = new ArrayList<>();
         List<Integer> parkingPositions = new ArrayList<>();
         getCarsAndParkingPositions(parkingPositions, carPositions);
-        int nodesNumber = carsNumber + placesNumber + 2;
-        sourceNode = nodesNumber - 2;
-        destinationNode = nodesNumber - 1;
-        adjacencyMatrix = new int[nodesNumber][nodesNumber];
-        for (int carNode = 0; carNode < carPositions.size(); carNode++) {
-            int carCell = carPositions.get(carNode);
-            findDistancesToParking(carCell, carNode, parkingPositions);
-            connectSourceNodesAndCars();
-            connectParkingNodesAndDestination();
+        GridDistanceFinder distanceFinder = new GridDistanceFinder(
+                parkingMap, carPositions, parkingPositions);
+        if (!distanceFinder.allCarsCanPark()) {
+            sortedGraph = distanceFinder.findNearestPlaces(0, 0);
+            return;
         }
-    }
-
-    private void connectSourceNodesAndCars() {
-        for (int carNode = 0; carNode < carsNumber; carNode++) {
-            adjacencyMatrix[sourceNode][carNode] = 1;
+        int placesLimit = distanceFinder.getMaxCarsInArea();
+        int probeLimit = Math.min(placesLimit, PROBE_PLACES_LIMIT);
+        while (true) {
+            sortedGraph = distanceFinder.findNearestPlaces(
+                    probeLimit, Integer.MAX_VALUE);
+            if (probeLimit == placesLimit) {
+                break;
+            }
+            int distanceBound =
+                    new BottleneckMatcher(sortedGraph).minMaxDistance();
+            if (distanceBound >= 0) {
+                sortedGraph = distanceFinder.findNearestPlaces(
+                        placesLimit, distanceBound);
+                break;
+            }
+            probeLimit = (int) Math.min(placesLimit,
+                    (long) probeLimit * PROBE_GROWTH);
         }
-    }
-
-    private void connectParkingNodesAndDestination() {
-        for (int placeIndex = 0; placeIndex < placesNumber; placeIndex++) {
-            int placeNode = parkingNode(placeIndex);
-            adjacencyMatrix[placeNode][destinationNode] = 1;
+        for (int carNode = 0; carNode < carsNumber; carNode++) {
+            if (sortedGraph.lastEdge(carNode)
+                    > sortedGraph.firstEdge(carNode)) {
+                maxPossibleDistance = Math.max(maxPossibleDistance,
+                        sortedGraph.getDistance(
+                                sortedGraph.lastEdge(carNode) - 1));
+            }
         }
     }
 
@@ -289,94 +746,6 @@ class ParkingMapParser {
             }
         }
         carsNumber = carPositions.size();
-        placesNumber = parkingPositions.size();
-    }
-
-    private void findDistancesToParking(int carCell, int carNode,
-                                        List<Integer> parkingPositions) {
-        final char WALL_SYMBOL = 'X';
-        int[] mapMarks = new int[mapSize];
-        markParkingPlaces(mapMarks, parkingPositions);
-        int currentDistance = 1;
-        mapMarks[carCell] = currentDistance;
-        Queue<Integer> queue = new LinkedList<>();
-        queue.add(carCell);
-        while (!queue.isEmpty()) {
-            int currentNode = queue.poll();
-            currentDistance = mapMarks[currentNode];
-            List<Integer> neighbors = mapCellNeighbors(currentNode);
-            for (int neighborIndex : neighbors) {
-                int mark = mapMarks[neighborIndex];
-                char cell = getCell(neighborIndex);
-                if (mark == 0 && cell != WALL_SYMBOL) {
-                    mapMarks[neighborIndex] = currentDistance + 1;
-                    queue.add(neighborIndex);
-                } else if (mark < 0) {
-                    mapMarks[neighborIndex] = currentDistance + 1;
-                    queue.add(neighborIndex);
-                    writeDistance(mark, carNode, currentDistance);
-                }
-            }
-        }
-    }
-
-    private void writeDistance(int mark, int carNode, int currentDistance) {
-        int parkingPositionIndex = -mark - 1;
-        int parkingNode = parkingNode(parkingPositionIndex);
-        adjacencyMatrix[carNode][parkingNode]
-                = currentDistance;
-        if (currentDistance > maxPossibleDistance) {
-            maxPossibleDistance = currentDistance;
-        }
-    }
-
-    private char getCell(int cellIndex) {
-        int rowIndex = cellIndex / columnsNumber;
-        int columnIndex = cellIndex % columnsNumber;
-        return parkingMap[rowIndex][columnIndex];
-    }
-
-    private void markParkingPlaces(int[] mapMarks,
-                                   List<Integer> parkingPositions) {
-        for (int parkingIndex = 0; parkingIndex < parkingPositions.size();
-             parkingIndex++) {
-            int parkingPosition = parkingPositions.get(parkingIndex);
-            mapMarks[parkingPosition] = -parkingIndex - 1;
-        }
-    }
-
-    private List<Integer> mapCellNeighbors(int cellIndex) {
-        final int MAX_NEIGHBORS_NUMBER = 4;
-        List<Integer> mapNodeNeighbors =
-                new ArrayList<>(MAX_NEIGHBORS_NUMBER);
-        int up = cellIndex - columnsNumber;
-        if (valid(up)) {
-            mapNodeNeighbors.add(up);
-        }
-        int down = cellIndex + columnsNumber;
-        if (valid(down)) {
-            mapNodeNeighbors.add(down);
-        }
-        int left = cellIndex - 1;
-        if (valid(left)
-                && cellIndex % columnsNumber != 0) {
-            mapNodeNeighbors.add(left);
-        }
-        int right = cellIndex + 1;
-        if (valid(right)
-                && cellIndex % columnsNumber != columnsNumber - 1) {
-            mapNodeNeighbors.add(right);
-        }
-        return mapNodeNeighbors;
-    }
-
-    private boolean valid(int nodeIndex) {
-        return nodeIndex >= 0
-                && nodeIndex < mapSize;
-    }
-
-    private int parkingNode(int parkingPositionIndex) {
-        return carsNumber + parkingPositionIndex;
     }
 
     public int carsNumber() {
@@ -388,19 +757,10 @@ class ParkingMapParser {
     }
 
     public ParkingGraph getGraph(int maxDistance) {
-        int[][] graphAdjacencyMatrix =
-                new int[adjacencyMatrix.length][adjacencyMatrix.length];
-        for (int rowIndex = 0;
-             rowIndex < adjacencyMatrix.length; rowIndex++) {
-            for (int columnIndex = 0; columnIndex < adjacencyMatrix.length;
-                 columnIndex++) {
-                int distance = adjacencyMatrix[rowIndex][columnIndex];
-                if (distance > 0 && distance <= maxDistance) {
-                    graphAdjacencyMatrix[rowIndex][columnIndex] = 1;
-                }
-            }
-        }
-        return new ParkingGraph(graphAdjacencyMatrix,
-                sourceNode, destinationNode);
+        return sortedGraph.thresholdView(maxDistance);
     }
-}
\ No newline at end of file
+
+    public ParkingGraph getSortedGraph() {
+        return sortedGraph;
+    }
+}
@@ -1,13 +1,30 @@
 package org.IhorLitvinov.eolymp.problems.remakes;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 public class Main {
+    private static final String INDEX_MODE = "--index";
+    private static final String COUNT_MODE = "--count";
+    private static final String ALL_MODE = "--all";
+    private static final String BATCH_MODE = "--batch";
+    private static final String APPROXIMATE_MODE = "--approximate";
+    private static final int INDEX_CACHE_SIZE = 16;
     private FastScanner scanner;
     private PrintWriter printWriter;
+    private String mode = "";
     private int[] pattern;
     private int[] composition;
+    private Map<CompositionKey, DeltaSuffixAutomaton> indexCache;
+    private MatchesBuffer matches;
+    private int maxIntervalError;
+    private int maxTotalError;
 
 
     public Main(FastScanner scanner, PrintWriter printWriter) {
@@ -15,24 +32,108 @@ public class Main {
         this.printWriter = printWriter;
     }
 
+    public void useMode(String mode) {
+        switch (mode) {
+            case INDEX_MODE:
+                indexCache = new LinkedHashMap<CompositionKey,
+                        DeltaSuffixAutomaton>(INDEX_CACHE_SIZE, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<
+                            CompositionKey, DeltaSuffixAutomaton> eldest) {
+                        return size() > INDEX_CACHE_SIZE;
+                    }
+                };
+                break;
+            case ALL_MODE:
+                matches = new MatchesBuffer();
+                break;
+            case COUNT_MODE:
+            case BATCH_MODE:
+            case APPROXIMATE_MODE:
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        this.mode = mode;
+    }
+
+    public void useApproximateMatching(int maxIntervalError,
+                                       int maxTotalError) {
+        this.maxIntervalError = maxIntervalError;
+        this.maxTotalError = maxTotalError;
+    }
+
     public static void main(String[] args) throws IOException {
         FastScanner scanner = new FastScanner(new File("input.txt"));
         PrintWriter printWriter = new PrintWriter(new File("output.txt"));
         Main main = new Main(scanner, printWriter);
+        if (args.length > 0) {
+            main.useMode(args[0]);
+        }
+        if (main.mode.equals(APPROXIMATE_MODE)) {
+            main.useApproximateMatching(Integer.parseInt(args[1]),
+                    Integer.parseInt(args[2]));
+        }
         int testNumber = scanner.nextInt();
-        for (int testIndex = 0; testIndex < testNumber; testIndex++) {
-            main.scanData();
-            main.solveProblem();
+        if (main.mode.equals(BATCH_MODE)) {
+            main.solveBatch(testNumber);
+        } else {
+            for (int testIndex = 0; testIndex < testNumber; testIndex++) {
+                main.scanData();
+                main.solveProblem();
+            }
         }
         printWriter.close();
     }
 
+    private void solveBatch(int testNumber) {
+        int[][] patterns = new int[testNumber][];
+        Map<CompositionKey, Map<Integer, List<Integer>>> batches =
+                new HashMap<>();
+        for (int testIndex = 0; testIndex < testNumber; testIndex++) {
+            scanData();
+            patterns[testIndex] = pattern;
+            batches.computeIfAbsent(new CompositionKey(composition),
+                    key -> new HashMap<>())
+                    .computeIfAbsent(pattern.length, length -> new ArrayList<>())
+                    .add(testIndex);
+        }
+        boolean[] answers = new boolean[testNumber];
+        for (Map.Entry<CompositionKey, Map<Integer, List<Integer>>> batch
+                : batches.entrySet()) {
+            int[] batchComposition = batch.getKey().getNotes();
+            for (List<Integer> testIndices : batch.getValue().values()) {
+                int[][] batchPatterns = new int[testIndices.size()][];
+                for (int patternIndex = 0; patternIndex < batchPatterns.length;
+                     patternIndex++) {
+                    batchPatterns[patternIndex] =
+                            patterns[testIndices.get(patternIndex)];
+                }
+                boolean[] found = new RollingHashBatchMatcher(batchPatterns)
+                        .findPatterns(batchComposition);
+                for (int patternIndex = 0; patternIndex < found.length;
+                     patternIndex++) {
+                    answers[testIndices.get(patternIndex)] = found[patternIndex];
+                }
+            }
+        }
+        for (boolean answer : answers) {
+            printWriter.println(answer ? 1 : 0);
+        }
+    }
+
     private void scanData() {
         int patternSize = scanner.nextInt();
         pattern = new int[patternSize];
         for (int noteIndex = 0; noteIndex < patternSize; noteIndex++) {
             pattern[noteIndex] = scanner.nextInt();
         }
+        if (!mode.isEmpty()) {
+            scanComposition();
+        }
+    }
+
+    private void scanComposition() {
         int compositionSize = scanner.nextInt();
         composition = new int[compositionSize];
         for (int noteIndex = 0; noteIndex < compositionSize; noteIndex++) {
@@ -40,56 +141,631 @@ public class Main {
         }
     }
 
+    private boolean compositionContainsPattern() {
+        if (indexCache == null) {
+            return new DeltaPatternFinder(pattern).contains(scanner);
+        }
+        DeltaSuffixAutomaton index = indexCache.computeIfAbsent(
+                new CompositionKey(composition),
+                key -> new DeltaSuffixAutomaton(composition));
+        return index.contains(pattern);
+    }
+
     private void solveProblem() {
-        if (ArrayPatternFinder.contains(pattern, composition)) {
-            printWriter.println(1);
-        } else {
-            printWriter.println(0);
+        switch (mode) {
+            case COUNT_MODE:
+                printWriter.println(
+                        new DeltaPatternFinder(pattern).count(composition));
+                break;
+            case ALL_MODE:
+                printAllMatches();
+                break;
+            case APPROXIMATE_MODE:
+                ApproximateDeltaMatcher matcher = new ApproximateDeltaMatcher(
+                        pattern, maxIntervalError, maxTotalError);
+                printWriter.println(matcher.contains(composition) ? 1 : 0);
+                break;
+            default:
+                if (compositionContainsPattern()) {
+                    printWriter.println(1);
+                } else {
+                    printWriter.println(0);
+                }
+        }
+    }
+
+    private void printAllMatches() {
+        matches.clear();
+        new DeltaPatternFinder(pattern).findAll(composition, matches);
+        printWriter.println(matches.size());
+        for (int matchIndex = 0; matchIndex < matches.size(); matchIndex++) {
+            printWriter.println(matches.getStart(matchIndex) + " "
+                    + matches.getTransposition(matchIndex));
         }
     }
 
-    static class ArrayPatternFinder {
-        public static boolean contains(int[] pattern,
-                                       int[] text) {
-            if (pattern.length > text.length) {
+    static class DeltaPatternFinder {
+        private int patternSize;
+        private int firstNote;
+        private int[] patternDeltas;
+        private int[] prefixFunctions;
+
+        public DeltaPatternFinder(int[] pattern) {
+            patternSize = pattern.length;
+            firstNote = patternSize > 0 ? pattern[0] : 0;
+            patternDeltas = new int[Math.max(0, patternSize - 1)];
+            for (int noteIndex = 1; noteIndex < patternSize; noteIndex++) {
+                patternDeltas[noteIndex - 1] =
+                        pattern[noteIndex] - pattern[noteIndex - 1];
+            }
+            prefixFunctions = new int[patternDeltas.length];
+            int matchedDeltas = 0;
+            for (int deltaIndex = 1; deltaIndex < patternDeltas.length;
+                 deltaIndex++) {
+                matchedDeltas = nextMatchedDeltas(matchedDeltas,
+                        patternDeltas[deltaIndex]);
+                prefixFunctions[deltaIndex] = matchedDeltas;
+            }
+        }
+
+        private int nextMatchedDeltas(int matchedDeltas, int delta) {
+            while (matchedDeltas > 0 && delta != patternDeltas[matchedDeltas]) {
+                matchedDeltas = prefixFunctions[matchedDeltas - 1];
+            }
+            if (delta == patternDeltas[matchedDeltas]) {
+                matchedDeltas++;
+            }
+            return matchedDeltas;
+        }
+
+        public boolean contains(FastScanner scanner) {
+            int compositionSize = scanner.nextInt();
+            if (patternSize > compositionSize) {
+                scanner.skip(compositionSize);
                 return false;
             }
-            if (pattern.length == 1) {
+            if (patternDeltas.length == 0) {
+                scanner.skip(compositionSize);
                 return true;
             }
-            int dataSize = pattern.length + text.length;
-            int[] data = new int[dataSize];
-            System.arraycopy(pattern, 0, data, 0, pattern.length);
-            System.arraycopy(text, 0, data, pattern.length, text.length);
-            int[] prefixFunctions = new int[dataSize];
-            prefixFunctions[0] = 0;
-            int delta;
-            for (int symbolIndex = 1; symbolIndex < dataSize; symbolIndex++) {
-                int lastPrefixSize = prefixFunctions[symbolIndex - 1];
-                int nextSymbol = data[symbolIndex];
-                int nextPrefixSymbol = data[lastPrefixSize];
-                for (; ; ) {
-                    if (lastPrefixSize > 0) {
-                        delta = data[symbolIndex - 1] - data[lastPrefixSize - 1];
-                    } else {
-                        delta = nextSymbol - nextPrefixSymbol;
+            int previousNote = scanner.nextInt();
+            int matchedDeltas = 0;
+            for (int noteIndex = 1; noteIndex < compositionSize; noteIndex++) {
+                int note = scanner.nextInt();
+                matchedDeltas = nextMatchedDeltas(matchedDeltas,
+                        note - previousNote);
+                if (matchedDeltas == patternDeltas.length) {
+                    scanner.skip(compositionSize - noteIndex - 1);
+                    return true;
+                }
+                previousNote = note;
+            }
+            return false;
+        }
+
+        public int count(int[] composition) {
+            return scan(composition, null);
+        }
+
+        public void findAll(int[] composition, MatchesBuffer matches) {
+            scan(composition, matches);
+        }
+
+        private int scan(int[] composition, MatchesBuffer matches) {
+            if (patternSize == 0 || patternSize > composition.length) {
+                return 0;
+            }
+            int matchesNumber = 0;
+            int matchedDeltas = 0;
+            int lastDelta = patternDeltas.length;
+            for (int noteIndex = patternDeltas.length == 0 ? 0 : 1;
+                 noteIndex < composition.length; noteIndex++) {
+                if (lastDelta > 0) {
+                    if (matchedDeltas == lastDelta) {
+                        matchedDeltas = prefixFunctions[matchedDeltas - 1];
                     }
-                    if (delta != nextSymbol - nextPrefixSymbol) {
-                        lastPrefixSize = prefixFunctions[lastPrefixSize - 1];
-                        nextPrefixSymbol = data[lastPrefixSize];
-                    } else {
-                        lastPrefixSize++;
-                        break;
+                    matchedDeltas = nextMatchedDeltas(matchedDeltas,
+                            composition[noteIndex] - composition[noteIndex - 1]);
+                }
+                if (matchedDeltas == lastDelta) {
+                    matchesNumber++;
+                    if (matches != null) {
+                        int start = noteIndex - lastDelta;
+                        matches.add(start, composition[start] - firstNote);
                     }
                 }
-                if (lastPrefixSize >= pattern.length
-                        && symbolIndex >= pattern.length * 2 - 1) {
-                    return true;
+            }
+            return matchesNumber;
+        }
+    }
+}
+
+class ApproximateDeltaMatcher {
+    private static final int MAX_TABLE_SIZE = 1 << 20;
+    private int patternSize;
+    private int[] patternDeltas;
+    private int maxIntervalError;
+    private int maxTotalError;
+    private boolean intervalErrorsOnly;
+    private int fieldWidth;
+    private int fieldsPerWord;
+    private int wordsNumber;
+    private long wordMask;
+    private long overflowBits;
+    private long emptyPrefixField;
+    private long minTableDelta;
+    private int tableSize;
+    private boolean[] computedDeltas;
+    private long[] vectors;
+    private int outsideVectorOffset;
+    private int scratchVectorOffset;
+
+    public ApproximateDeltaMatcher(int[] pattern, int maxIntervalError,
+                                   int maxTotalError) {
+        if (maxIntervalError < 0 || maxTotalError < 0) {
+            throw new IllegalArgumentException("Error bound is negative.");
+        }
+        this.maxIntervalError = maxIntervalError;
+        this.maxTotalError = maxTotalError;
+        patternSize = pattern.length;
+        patternDeltas = new int[Math.max(0, patternSize - 1)];
+        for (int noteIndex = 1; noteIndex < patternSize; noteIndex++) {
+            patternDeltas[noteIndex - 1] =
+                    pattern[noteIndex] - pattern[noteIndex - 1];
+        }
+        intervalErrorsOnly = patternDeltas.length <= Long.SIZE
+                && (long) patternDeltas.length * maxIntervalError
+                <= maxTotalError;
+        if (intervalErrorsOnly) {
+            fieldWidth = 1;
+            fieldsPerWord = Long.SIZE;
+        } else {
+            fieldWidth = 2;
+            while ((1L << (fieldWidth - 1)) < maxTotalError + 2L) {
+                fieldWidth++;
+            }
+            fieldsPerWord = Long.SIZE / fieldWidth;
+        }
+        wordsNumber = Math.max(1,
+                (patternDeltas.length + fieldsPerWord - 1) / fieldsPerWord);
+        int usedBits = fieldsPerWord * fieldWidth;
+        wordMask = usedBits == Long.SIZE ? -1L : (1L << usedBits) - 1;
+        for (int field = 0; field < fieldsPerWord; field++) {
+            overflowBits |= 1L << (field * fieldWidth + fieldWidth - 1);
+        }
+        emptyPrefixField = (1L << (fieldWidth - 1)) - (maxTotalError + 1L);
+        computeVectors();
+    }
+
+    private void computeVectors() {
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+        for (int delta : patternDeltas) {
+            minDelta = Math.min(minDelta, delta);
+            maxDelta = Math.max(maxDelta, delta);
+        }
+        minTableDelta = minDelta - maxIntervalError;
+        long tableDeltas = maxDelta + maxIntervalError - minTableDelta + 1;
+        if (patternDeltas.length > 0
+                && tableDeltas * wordsNumber <= MAX_TABLE_SIZE) {
+            tableSize = (int) tableDeltas;
+        }
+        outsideVectorOffset = tableSize * wordsNumber;
+        scratchVectorOffset = outsideVectorOffset + wordsNumber;
+        vectors = new long[scratchVectorOffset + wordsNumber];
+        computedDeltas = new boolean[tableSize];
+        if (!intervalErrorsOnly) {
+            long overflowValue = maxTotalError + 1L;
+            for (int deltaIndex = 0; deltaIndex < patternDeltas.length;
+                 deltaIndex++) {
+                vectors[outsideVectorOffset + deltaIndex / fieldsPerWord] |=
+                        overflowValue
+                                << (deltaIndex % fieldsPerWord * fieldWidth);
+            }
+        }
+    }
+
+    private void computeVector(long textDelta, int offset) {
+        Arrays.fill(vectors, offset, offset + wordsNumber, 0);
+        long overflowValue = maxTotalError + 1L;
+        for (int deltaIndex = 0; deltaIndex < patternDeltas.length;
+             deltaIndex++) {
+            long error = Math.abs(textDelta - patternDeltas[deltaIndex]);
+            int shift = deltaIndex % fieldsPerWord * fieldWidth;
+            int word = offset + deltaIndex / fieldsPerWord;
+            if (intervalErrorsOnly) {
+                if (error <= maxIntervalError) {
+                    vectors[word] |= 1L << shift;
+                }
+            } else if (error <= maxIntervalError) {
+                vectors[word] |= Math.min(error, overflowValue) << shift;
+            } else {
+                vectors[word] |= overflowValue << shift;
+            }
+        }
+    }
+
+    private int vectorOffset(int textDelta) {
+        long tableIndex = textDelta - minTableDelta;
+        if (tableIndex >= 0 && tableIndex < tableSize) {
+            int offset = (int) tableIndex * wordsNumber;
+            if (!computedDeltas[(int) tableIndex]) {
+                computeVector(textDelta, offset);
+                computedDeltas[(int) tableIndex] = true;
+            }
+            return offset;
+        }
+        if (tableSize > 0 || patternDeltas.length == 0) {
+            return outsideVectorOffset;
+        }
+        computeVector(textDelta, scratchVectorOffset);
+        return scratchVectorOffset;
+    }
+
+    public boolean contains(int[] composition) {
+        if (patternSize == 0 || patternSize > composition.length) {
+            return false;
+        }
+        if (patternDeltas.length == 0) {
+            return true;
+        }
+        if (intervalErrorsOnly) {
+            return containsWithIntervalErrors(composition);
+        }
+        return containsWithTotalError(composition);
+    }
+
+    private boolean containsWithIntervalErrors(int[] composition) {
+        long lastBit = 1L << (patternDeltas.length - 1);
+        long state = 0;
+        for (int noteIndex = 1; noteIndex < composition.length; noteIndex++) {
+            int textDelta = composition[noteIndex] - composition[noteIndex - 1];
+            state = ((state << 1) | 1) & vectors[vectorOffset(textDelta)];
+            if ((state & lastBit) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsWithTotalError(int[] composition) {
+        long[] state = new long[wordsNumber];
+        Arrays.fill(state, overflowBits & wordMask);
+        int lastField = patternDeltas.length - 1;
+        int lastWord = lastField / fieldsPerWord;
+        long lastOverflowBit = 1L << (lastField % fieldsPerWord * fieldWidth
+                + fieldWidth - 1);
+        int topFieldShift = (fieldsPerWord - 1) * fieldWidth;
+        long fieldMask = (1L << fieldWidth) - 1;
+        for (int noteIndex = 1; noteIndex < composition.length; noteIndex++) {
+            int textDelta = composition[noteIndex] - composition[noteIndex - 1];
+            int offset = vectorOffset(textDelta);
+            long carry = emptyPrefixField;
+            for (int word = 0; word < wordsNumber; word++) {
+                long current = state[word];
+                long shifted = ((current << fieldWidth) & wordMask) | carry;
+                carry = (current >>> topFieldShift) & fieldMask;
+                long sum = shifted + vectors[offset + word];
+                long overflow = sum & overflowBits;
+                long overflowFields =
+                        (overflow - (overflow >>> (fieldWidth - 1))) | overflow;
+                state[word] = (sum & ~overflowFields) | overflow;
+            }
+            if ((state[lastWord] & lastOverflowBit) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+class RollingHashBatchMatcher {
+    private static final long HASH_BASE = 0x9E3779B97F4A7C15L;
+    private static final int NONE = -1;
+    private int[][] patterns;
+    private int deltasNumber;
+    private long highestPower = 1;
+    private long[] slotHashes;
+    private int[] slotPatterns;
+    private int slotsMask;
+    private int[] nextSameHashPatterns;
+
+    public RollingHashBatchMatcher(int[][] patterns) {
+        this.patterns = patterns;
+        deltasNumber = patterns[0].length - 1;
+        for (int deltaIndex = 0; deltaIndex < deltasNumber; deltaIndex++) {
+            highestPower *= HASH_BASE;
+        }
+        int slotsNumber = 2;
+        while (slotsNumber < patterns.length * 2) {
+            slotsNumber <<= 1;
+        }
+        slotHashes = new long[slotsNumber];
+        slotPatterns = new int[slotsNumber];
+        slotsMask = slotsNumber - 1;
+        Arrays.fill(slotPatterns, NONE);
+        nextSameHashPatterns = new int[patterns.length];
+        for (int patternIndex = 0; patternIndex < patterns.length;
+             patternIndex++) {
+            if (patterns[patternIndex].length != deltasNumber + 1) {
+                throw new IllegalArgumentException(
+                        "Patterns must have equal lengths.");
+            }
+            addPattern(patternIndex, hash(patterns[patternIndex], 0));
+        }
+    }
+
+    private long hash(int[] notes, int from) {
+        long hash = 0;
+        for (int noteIndex = from + 1; noteIndex <= from + deltasNumber;
+             noteIndex++) {
+            hash = hash * HASH_BASE + (notes[noteIndex] - notes[noteIndex - 1]);
+        }
+        return hash;
+    }
+
+    private int slot(long hash) {
+        long mixed = hash * HASH_BASE;
+        return (int) (mixed ^ (mixed >>> 32)) & slotsMask;
+    }
+
+    private void addPattern(int patternIndex, long hash) {
+        int slot = slot(hash);
+        while (slotPatterns[slot] != NONE && slotHashes[slot] != hash) {
+            slot = (slot + 1) & slotsMask;
+        }
+        nextSameHashPatterns[patternIndex] = slotPatterns[slot];
+        slotHashes[slot] = hash;
+        slotPatterns[slot] = patternIndex;
+    }
+
+    private int findPatterns(long hash) {
+        for (int slot = slot(hash); slotPatterns[slot] != NONE;
+             slot = (slot + 1) & slotsMask) {
+            if (slotHashes[slot] == hash) {
+                return slotPatterns[slot];
+            }
+        }
+        return NONE;
+    }
+
+    private boolean sameDeltas(int[] pattern, int[] composition, int start) {
+        int transposition = composition[start] - pattern[0];
+        for (int noteIndex = 1; noteIndex <= deltasNumber; noteIndex++) {
+            if (composition[start + noteIndex] - pattern[noteIndex]
+                    != transposition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean[] findPatterns(int[] composition) {
+        boolean[] found = new boolean[patterns.length];
+        int windowsNumber = composition.length - deltasNumber;
+        if (windowsNumber <= 0) {
+            return found;
+        }
+        int notFoundNumber = patterns.length;
+        long hash = hash(composition, 0);
+        for (int start = 0; ; start++) {
+            for (int patternIndex = findPatterns(hash); patternIndex != NONE;
+                 patternIndex = nextSameHashPatterns[patternIndex]) {
+                if (!found[patternIndex]
+                        && sameDeltas(patterns[patternIndex], composition, start)) {
+                    found[patternIndex] = true;
+                    notFoundNumber--;
+                }
+            }
+            if (notFoundNumber == 0 || start + 1 == windowsNumber) {
+                return found;
+            }
+            if (deltasNumber > 0) {
+                int end = start + deltasNumber + 1;
+                hash = hash * HASH_BASE
+                        + (composition[end] - composition[end - 1])
+                        - highestPower
+                        * (composition[start + 1] - composition[start]);
+            }
+        }
+    }
+}
+
+class MatchesBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+    private int[] values = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    public void add(int start, int transposition) {
+        if (size * 2 == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size * 2] = start;
+        values[size * 2 + 1] = transposition;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int matchIndex) {
+        return values[matchIndex * 2];
+    }
+
+    public int getTransposition(int matchIndex) {
+        return values[matchIndex * 2 + 1];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
+
+class CompositionKey {
+    private int[] notes;
+    private int hash;
+
+    public CompositionKey(int[] notes) {
+        this.notes = notes;
+        hash = Arrays.hashCode(notes);
+    }
+
+    public int[] getNotes() {
+        return notes;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CompositionKey
+                && Arrays.equals(notes, ((CompositionKey) other).notes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
+
+class DeltaSuffixAutomaton {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final long EMPTY = -1;
+    private int notesNumber;
+    private int[] lengths;
+    private int[] suffixLinks;
+    private int[] firstEdges;
+    private int statesNumber;
+    private int lastState;
+    private int[] edgeDeltas;
+    private int[] edgeTargets;
+    private int[] nextEdges;
+    private int edgesNumber;
+    private long[] edgeKeys;
+    private int[] edgeSlots;
+    private int slotsMask;
+
+    public DeltaSuffixAutomaton(int[] composition) {
+        notesNumber = composition.length;
+        int deltasNumber = Math.max(0, composition.length - 1);
+        int maxStatesNumber = 2 * deltasNumber + 2;
+        int maxEdgesNumber = 3 * deltasNumber + 4;
+        lengths = new int[maxStatesNumber];
+        suffixLinks = new int[maxStatesNumber];
+        firstEdges = new int[maxStatesNumber];
+        edgeDeltas = new int[maxEdgesNumber];
+        edgeTargets = new int[maxEdgesNumber];
+        nextEdges = new int[maxEdgesNumber];
+        int slotsNumber = 2;
+        while (slotsNumber < maxEdgesNumber * 2) {
+            slotsNumber <<= 1;
+        }
+        edgeKeys = new long[slotsNumber];
+        edgeSlots = new int[slotsNumber];
+        slotsMask = slotsNumber - 1;
+        Arrays.fill(edgeKeys, EMPTY);
+        lastState = newState(0);
+        suffixLinks[ROOT] = NONE;
+        for (int noteIndex = 1; noteIndex < composition.length; noteIndex++) {
+            extend(composition[noteIndex] - composition[noteIndex - 1]);
+        }
+    }
+
+    private int newState(int length) {
+        int state = statesNumber++;
+        lengths[state] = length;
+        firstEdges[state] = NONE;
+        return state;
+    }
+
+    private long edgeKey(int state, int delta) {
+        return ((long) state << Integer.SIZE) | (delta & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & slotsMask;
+    }
+
+    private int findEdge(int state, int delta) {
+        long key = edgeKey(state, delta);
+        for (int slot = slot(key); edgeKeys[slot] != EMPTY;
+             slot = (slot + 1) & slotsMask) {
+            if (edgeKeys[slot] == key) {
+                return edgeSlots[slot];
+            }
+        }
+        return NONE;
+    }
+
+    private void addEdge(int state, int delta, int target) {
+        int edge = edgesNumber++;
+        edgeDeltas[edge] = delta;
+        edgeTargets[edge] = target;
+        nextEdges[edge] = firstEdges[state];
+        firstEdges[state] = edge;
+        long key = edgeKey(state, delta);
+        int slot = slot(key);
+        while (edgeKeys[slot] != EMPTY) {
+            slot = (slot + 1) & slotsMask;
+        }
+        edgeKeys[slot] = key;
+        edgeSlots[slot] = edge;
+    }
+
+    private void extend(int delta) {
+        int currentState = newState(lengths[lastState] + 1);
+        int state = lastState;
+        while (state != NONE && findEdge(state, delta) == NONE) {
+            addEdge(state, delta, currentState);
+            state = suffixLinks[state];
+        }
+        if (state == NONE) {
+            suffixLinks[currentState] = ROOT;
+        } else {
+            int edge = findEdge(state, delta);
+            int nextState = edgeTargets[edge];
+            if (lengths[state] + 1 == lengths[nextState]) {
+                suffixLinks[currentState] = nextState;
+            } else {
+                int clone = cloneState(nextState, lengths[state] + 1);
+                while (state != NONE && edge != NONE
+                        && edgeTargets[edge] == nextState) {
+                    edgeTargets[edge] = clone;
+                    state = suffixLinks[state];
+                    edge = state == NONE ? NONE : findEdge(state, delta);
                 }
-                prefixFunctions[symbolIndex] = lastPrefixSize;
+                suffixLinks[nextState] = clone;
+                suffixLinks[currentState] = clone;
             }
+        }
+        lastState = currentState;
+    }
+
+    private int cloneState(int state, int length) {
+        int clone = newState(length);
+        suffixLinks[clone] = suffixLinks[state];
+        for (int edge = firstEdges[state]; edge != NONE;
+             edge = nextEdges[edge]) {
+            addEdge(clone, edgeDeltas[edge], edgeTargets[edge]);
+        }
+        return clone;
+    }
+
+    public boolean contains(int[] pattern) {
+        if (pattern.length > notesNumber) {
             return false;
         }
+        int state = ROOT;
+        for (int noteIndex = 1; noteIndex < pattern.length; noteIndex++) {
+            int edge = findEdge(state,
+                    pattern[noteIndex] - pattern[noteIndex - 1]);
+            if (edge == NONE) {
+                return false;
+            }
+            state = edgeTargets[edge];
+        }
+        return true;
     }
 }
 
@@ -143,6 +819,19 @@ class FastScanner {
         return Integer.parseInt(next());
     }
 
+    void skip(int tokensNumber) {
+        while (tokensNumber > 0 && hasMoreTokens()) {
+            int lineTokensNumber = st.countTokens();
+            if (lineTokensNumber <= tokensNumber) {
+                tokensNumber -= lineTokensNumber;
+                st = null;
+            } else {
+                st.nextToken();
+                tokensNumber--;
+            }
+        }
+    }
+
     long nextLong() {
         return Long.parseLong(next());
     }